@@ -5,6 +5,7 @@ import static org.fest.assertions.Assertions.*;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.junit.After;
 import org.junit.Test;
 
 import com.amazonaws.services.s3.model.Bucket;
@@ -13,6 +14,11 @@ import com.amazonaws.services.s3.model.S3ObjectSummary;
 public class AwsS3HelperIT {
 	private AwsS3Helper helperUnderTest = new AwsS3Helper();
 
+	@After
+	public void afterEachTest() {
+		helperUnderTest.shutdown();
+	}
+
 	@Test
 	public void shouldHaveBuckets() {
 		// when
@@ -51,4 +57,46 @@ public class AwsS3HelperIT {
 		assertThat(summary.getBucketName()).isEqualTo("wordoflife.mn.audio");
 		assertThat(summary.getKey()).isEqualTo("index.html");
 	}
+
+	/**
+	 * Not a test, but a measurement of the per-operation overhead of building a client for every operation (what every
+	 * call used to do) compared with sharing one client. Network times vary too much to assert on, so it is only
+	 * printed.
+	 */
+	@Test
+	public void measureSharedClient() {
+		final int operationCount = 10;
+
+		// warm up both paths so class loading isn't counted
+		AwsS3Helper warmUpHelper = new AwsS3Helper();
+		try {
+			warmUpHelper.getBucket("wordoflife.mn.audio");
+		}
+		finally {
+			warmUpHelper.shutdown();
+		}
+		helperUnderTest.getBucket("wordoflife.mn.audio");
+
+		// when
+		long startTime = System.nanoTime();
+		for (int i = 0; i < operationCount; i++) {
+			AwsS3Helper freshHelper = new AwsS3Helper();
+			try {
+				freshHelper.getBuckets();
+			}
+			finally {
+				freshHelper.shutdown();
+			}
+		}
+		long freshClientNanos = (System.nanoTime() - startTime) / operationCount;
+
+		startTime = System.nanoTime();
+		for (int i = 0; i < operationCount; i++)
+			helperUnderTest.getBuckets();
+		long sharedClientNanos = (System.nanoTime() - startTime) / operationCount;
+
+		// then
+		System.out.println(String.format("listBuckets: %.1f ms/op with a new client per call, %.1f ms/op shared",
+				freshClientNanos / 1e6, sharedClientNanos / 1e6));
+	}
 }
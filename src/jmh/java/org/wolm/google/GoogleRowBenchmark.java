@@ -0,0 +1,59 @@
+package org.wolm.google;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading every cell of a column, the way filters and the podcast read the message log. A date column's text is
+ * rewritten as yyyy-MM-dd by {@link GoogleRow#getValue(String)}, so it is measured apart from a plain text column.
+ *
+ * @author wolm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GoogleRowBenchmark {
+	@Param({ "100", "10000", "100000" })
+	public int rowCount;
+
+	private List<GoogleRow> rows;
+
+	@Setup
+	public void createWorksheet() {
+		rows = SyntheticWorksheets.create(rowCount).rows;
+	}
+
+	@Benchmark
+	public void getValue(Blackhole blackhole) {
+		for (GoogleRow row : rows)
+			blackhole.consume(row.getValue("name"));
+	}
+
+	@Benchmark
+	public void getValueOfDate(Blackhole blackhole) {
+		for (GoogleRow row : rows)
+			blackhole.consume(row.getValue("date"));
+	}
+
+	@Benchmark
+	public void getDateValue(Blackhole blackhole) {
+		for (GoogleRow row : rows)
+			blackhole.consume(row.getDateValue("date"));
+	}
+}
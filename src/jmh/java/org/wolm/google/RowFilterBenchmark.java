@@ -0,0 +1,66 @@
+package org.wolm.google;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filtering the message log down to the messages of a podcast: the chain the podcast uses (public, with audio, in the
+ * Service playlist, on Sundays), scanned row by row and with the visibility and playlist columns indexed, and the
+ * weekday filter on its own. The scans go through {@link RowFilter#filter(List, RowFilter)}, which does not look at
+ * the indexes, so one worksheet serves both.
+ *
+ * @author wolm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RowFilterBenchmark {
+	@Param({ "100", "10000", "100000" })
+	public int rowCount;
+
+	private GoogleWorksheet worksheet;
+
+	@Setup
+	public void createWorksheet() throws Exception {
+		worksheet = SyntheticWorksheets.create(rowCount);
+		worksheet.indexColumns("visibility", "playlist");
+	}
+
+	/** @return A new chain each time, since a chain keeps counts while it filters */
+	private RowFilterChain createPodcastFilter() {
+		return new RowFilterChain(new RowFilter_Value("visibility", "Public"), new RowFilter_ValueStartsWith(
+				"audiolink", "http"), new RowFilter_Value("playlist", "Service"), new RowFilter_Weekday("date",
+				Calendar.SUNDAY));
+	}
+
+	@Benchmark
+	public List<GoogleRow> filterChain() {
+		return RowFilter.filter(worksheet.rows, createPodcastFilter());
+	}
+
+	@Benchmark
+	public List<GoogleRow> filterChainIndexed() throws Exception {
+		return worksheet.getRows(createPodcastFilter());
+	}
+
+	@Benchmark
+	public List<GoogleRow> filterWeekday() {
+		return RowFilter.filter(worksheet.rows, new RowFilter_Weekday("date", "Sunday"));
+	}
+}
@@ -0,0 +1,63 @@
+package org.wolm.google;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ordering the message log. {@link RowSource#getRowsOrderedBy(String, boolean)} keeps the order of a column once it
+ * is worked out, so the first ordering (the typed values of the column are extracted and sorted) is measured apart
+ * from asking again. Picking the most recent rows without sorting is measured for comparison.
+ *
+ * @author wolm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RowOrderingBenchmark {
+	@Param({ "100", "10000", "100000" })
+	public int rowCount;
+
+	private GoogleWorksheet worksheet;
+
+	@Setup
+	public void createWorksheet() {
+		worksheet = SyntheticWorksheets.create(rowCount);
+	}
+
+	@Benchmark
+	public GoogleRow orderByDate() throws Exception {
+		worksheet.columnKeys.clear();
+		return worksheet.getRowsOrderedBy("date", false).get(0);
+	}
+
+	@Benchmark
+	public GoogleRow orderByText() throws Exception {
+		worksheet.columnKeys.clear();
+		return worksheet.getRowsOrderedBy("name").get(0);
+	}
+
+	@Benchmark
+	public GoogleRow orderByDateAgain() throws Exception {
+		return worksheet.getRowsOrderedBy("date", false).get(0);
+	}
+
+	@Benchmark
+	public List<GoogleRow> topRowsByDate() throws Exception {
+		return worksheet.getTopRowsOrderedBy("date", null, 52);
+	}
+}
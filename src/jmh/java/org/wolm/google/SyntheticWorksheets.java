@@ -0,0 +1,70 @@
+package org.wolm.google;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gdata.data.spreadsheet.CustomElementCollection;
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+/**
+ * Message logs of any size for the benchmarks, shaped like the real one: a service or two a week going back as far as
+ * 50 years, mostly public, in a handful of playlists, with dates written the way the list feed writes them (M/d/yyyy).
+ * The rows are the same for a given size on every run.
+ *
+ * @author wolm
+ */
+public class SyntheticWorksheets {
+	private static final String[] VISIBILITIES = { "Public", "Public", "Public", "Private", "Raw", null };
+	private static final String[] PLAYLISTS = { "Service", "Service", "Bible Study", "Special", null };
+	private static final String[] SPEAKERS = { "Pastor Vern", "Pastor Mary", "Guest Speaker" };
+	/** Two services a week for 50 years */
+	private static final int SERVICES_IN_DATE_RANGE = 50 * 104;
+
+	private SyntheticWorksheets() {
+		super();
+	}
+
+	/**
+	 * @param rowCount Number of rows
+	 * @return A worksheet holding the rows, as if they had been read from Google
+	 */
+	public static GoogleWorksheet create(int rowCount) {
+		GoogleWorksheet worksheet = new GoogleWorksheet(null, null);
+		worksheet.rows = createRows(worksheet, rowCount);
+		return worksheet;
+	}
+
+	private static List<GoogleRow> createRows(RowSource source, int rowCount) {
+		Random random = new Random(rowCount);
+		Calendar calendar = Calendar.getInstance();
+
+		List<GoogleRow> rows = new ArrayList<>(rowCount);
+		for (int i = 0; i < rowCount; i++) {
+			// alternate Wednesdays and Sundays, going back in time from 12/28/2014 and starting over after 50 years,
+			// so that large logs repeat dates instead of running into the distant past
+			int service = i % SERVICES_IN_DATE_RANGE;
+			calendar.clear();
+			calendar.set(2014, Calendar.DECEMBER, 28);
+			calendar.add(Calendar.DAY_OF_MONTH, -7 * (service / 2) - (service % 2 == 0 ? 4 : 7));
+			String date = (calendar.get(Calendar.MONTH) + 1) + "/" + calendar.get(Calendar.DAY_OF_MONTH) + "/"
+					+ calendar.get(Calendar.YEAR);
+			String visibility = VISIBILITIES[random.nextInt(VISIBILITIES.length)];
+
+			ListEntry entry = new ListEntry();
+			CustomElementCollection cells = entry.getCustomElements();
+			RowSource.setCellValue(cells, "date", date);
+			RowSource.setCellValue(cells, "name", "Message " + i + ": Walking in Love");
+			RowSource.setCellValue(cells, "speaker", SPEAKERS[random.nextInt(SPEAKERS.length)]);
+			RowSource.setCellValue(cells, "description", "Message on 1 John 4 & how we love, part " + i);
+			RowSource.setCellValue(cells, "audiolink", "Raw".equals(visibility) ? null
+					: "https://s3-us-west-2.amazonaws.com/wordoflife.mn.audio/" + calendar.get(Calendar.YEAR)
+							+ "/service-" + i + ".mp3");
+			RowSource.setCellValue(cells, "visibility", visibility);
+			RowSource.setCellValue(cells, "playlist", PLAYLISTS[random.nextInt(PLAYLISTS.length)]);
+			rows.add(new GoogleRow(source, entry));
+		}
+		return rows;
+	}
+}
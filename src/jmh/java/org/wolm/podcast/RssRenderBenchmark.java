@@ -0,0 +1,62 @@
+package org.wolm.podcast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering a podcast the way {@link App} does: a new {@link RssFeedWriter} per feed, writing UTF-8 into a buffer
+ * that is reused from one feed to the next. 52 items is a year of Sundays. The line-by-line printing the writer
+ * replaced is measured for comparison.
+ *
+ * @author wolm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RssRenderBenchmark {
+	@Param({ "52", "1000", "10000" })
+	public int itemCount;
+
+	private List<PodcastItem> items;
+	private final ByteArrayOutputStream renderBuffer = new ByteArrayOutputStream(64 * 1024);
+
+	@Setup
+	public void createItems() {
+		items = RssFeedWriterTest.createItems(itemCount);
+	}
+
+	@Benchmark
+	public int render() throws Exception {
+		renderBuffer.reset();
+		RssFeedWriter feedWriter = new RssFeedWriter(new OutputStreamWriter(renderBuffer, "UTF-8"),
+				RssFeedWriterTest.SUNDAY_FEED);
+		feedWriter.writeHeader();
+		for (PodcastItem item : items)
+			feedWriter.writeItem(item);
+		feedWriter.writeFooter();
+		feedWriter.flush();
+		return renderBuffer.size();
+	}
+
+	@Benchmark
+	public int renderWithPrintln() throws Exception {
+		return RssFeedWriterTest.renderWithPrintln(items).length;
+	}
+}
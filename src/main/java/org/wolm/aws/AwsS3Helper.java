@@ -1,23 +1,57 @@
 package org.wolm.aws;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import com.amazonaws.auth.PropertiesFileCredentialsProvider;
-import com.amazonaws.regions.Region;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.PropertiesCredentials;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.Bucket;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.HeadBucketRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.util.Base64;
 
 /**
  * Helper for accessing Amazon's S3 content.
@@ -28,19 +62,120 @@ import com.amazonaws.services.s3.model.S3ObjectSummary;
  * <li>accessKey=
  * <li>secretKey=
  * </ul>
+ * The connection pool of the client can optionally be tuned with these values in the same file:
+ * <ul>
+ * <li>maxConnections= (default 50)
+ * <li>socketTimeoutMillis= (default 50000)
+ * <li>connectionTimeoutMillis= (default 10000)
+ * <li>tcpKeepAlive= (default true)
+ * <li>trustedBuckets= comma-separated names of buckets that are known to exist and are never checked
+ * </ul>
+ * One client (and its connection pool) is built the first time it is needed and is shared by all callers of the
+ * helper, including concurrent ones. Call {@link #shutdown()} to release its connections.
  * 
  * @author wolm
  */
 public class AwsS3Helper {
+	private static final long MINIMUM_PART_SIZE = 5L * 1024 * 1024;
+	private static final long MAXIMUM_PART_COUNT = 10000;
+
+	@Nonnull
+	private final File propertiesFile;
+	private volatile AmazonS3 s3Client = null;
+
+	// bucket handles that have been checked (or are trusted), kept for the life of the helper
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+	private final Set<String> trustedBucketNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile boolean trustedBucketNamesLoaded = false;
+
+	public AwsS3Helper() {
+		this(new File(System.getenv("HOME") + "/.wolm/aws.s3.properties"));
+	}
+
+	/** @param propertiesFile File containing the credentials and client settings */
+	public AwsS3Helper(@Nonnull File propertiesFile) {
+		super();
+		this.propertiesFile = propertiesFile;
+	}
 
+	/** @return The shared client, building it if this is the first time it is needed */
 	@Nonnull
 	private AmazonS3 getS3Client() {
-		AmazonS3Client s3 = new AmazonS3Client(new PropertiesFileCredentialsProvider(System.getenv("HOME")
-				+ "/.wolm/aws.s3.properties"));
-		s3.setRegion(Region.getRegion(Regions.US_WEST_2));
+		AmazonS3 s3 = s3Client;
+		if (s3 == null) {
+			synchronized (this) {
+				s3 = s3Client;
+				if (s3 == null) s3Client = s3 = createS3Client();
+			}
+		}
 		return s3;
 	}
 
+	/**
+	 * Builds a new client from the properties file. The credentials are read once here rather than on every request.
+	 * 
+	 * @return A new client
+	 * @throws AmazonClientException if the properties file cannot be read
+	 */
+	@Nonnull
+	AmazonS3 createS3Client() {
+		Properties properties;
+		try {
+			properties = readProperties();
+		}
+		catch (IOException e) {
+			throw new AmazonClientException("Unable to read AWS configuration from " + propertiesFile, e);
+		}
+
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setMaxConnections(getIntProperty(properties, "maxConnections",
+				ClientConfiguration.DEFAULT_MAX_CONNECTIONS));
+		configuration.setSocketTimeout(getIntProperty(properties, "socketTimeoutMillis",
+				ClientConfiguration.DEFAULT_SOCKET_TIMEOUT));
+		configuration.setConnectionTimeout(getIntProperty(properties, "connectionTimeoutMillis",
+				ClientConfiguration.DEFAULT_CONNECTION_TIMEOUT));
+		configuration.setUseTcpKeepAlive(Boolean.parseBoolean(properties.getProperty("tcpKeepAlive", "true")));
+
+		PropertiesCredentials credentials;
+		try {
+			credentials = new PropertiesCredentials(propertiesFile);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			throw new AmazonClientException("Unable to read AWS credentials from " + propertiesFile, e);
+		}
+
+		return AmazonS3ClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(credentials))
+				.withClientConfiguration(configuration).withRegion(Regions.US_WEST_2).build();
+	}
+
+	/** Releases the connections held by the shared client. The next use of the helper builds a new client. */
+	public synchronized void shutdown() {
+		if (s3Client != null) {
+			s3Client.shutdown();
+			s3Client = null;
+		}
+	}
+
+	@Nonnull
+	private Properties readProperties() throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = new FileReader(propertiesFile)) {
+			properties.load(reader);
+		}
+		return properties;
+	}
+
+	private int getIntProperty(Properties properties, String name, int defaultValue) {
+		String value = properties.getProperty(name);
+		if (value == null) return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
 	/** @return All buckets in the S3 account */
 	@Nonnull
 	public List<Bucket> getBuckets() {
@@ -48,14 +183,65 @@ public class AwsS3Helper {
 	}
 
 	/**
+	 * Gets a handle to a bucket. The existence of the bucket is checked with a single HEAD request (or not at all if
+	 * the bucket is trusted), and the handle is remembered for the life of the helper, so this does not depend on how
+	 * many buckets the account has.
+	 * <p>
+	 * The returned bucket only carries the name; use {@link #getBuckets()} if the owner or creation date are needed.
+	 * 
 	 * @param bucketName
 	 * @return Bucket with the name, or <code>null</code> if not found
+	 * @throws AmazonS3Exception if the bucket cannot be checked, like when it belongs to another account (403)
 	 */
 	@Nullable
 	public Bucket getBucket(@Nonnull String bucketName) {
-		for (Bucket bucket : getBuckets())
-			if (bucketName.equals(bucket.getName())) return bucket;
-		return null;
+		Bucket bucket = buckets.get(bucketName);
+		if (bucket != null) return bucket;
+
+		if (!isTrustedBucketName(bucketName)) {
+			try {
+				getS3Client().headBucket(new HeadBucketRequest(bucketName));
+			}
+			catch (AmazonS3Exception e) {
+				if (e.getStatusCode() == 404) return null;
+				throw e;
+			}
+		}
+
+		buckets.putIfAbsent(bucketName, new Bucket(bucketName));
+		return buckets.get(bucketName);
+	}
+
+	/**
+	 * Marks a bucket as known to exist, so {@link #getBucket(String)} never has to check it.
+	 * 
+	 * @param bucketName Name of a bucket
+	 */
+	public void addTrustedBucketName(@Nonnull String bucketName) {
+		trustedBucketNames.add(bucketName);
+	}
+
+	/**
+	 * @param bucketName Name of a bucket
+	 * @return <code>true</code> if the bucket was marked as trusted, either by {@link #addTrustedBucketName(String)} or
+	 * in the properties file
+	 */
+	public boolean isTrustedBucketName(@Nonnull String bucketName) {
+		if (!trustedBucketNamesLoaded) {
+			synchronized (this) {
+				if (!trustedBucketNamesLoaded) {
+					try {
+						for (String name : readProperties().getProperty("trustedBuckets", "").split(","))
+							if (!name.trim().isEmpty()) trustedBucketNames.add(name.trim());
+					}
+					catch (IOException e) {
+						// no properties, so nothing is trusted unless added explicitly
+					}
+					trustedBucketNamesLoaded = true;
+				}
+			}
+		}
+		return trustedBucketNames.contains(bucketName);
 	}
 
 	/**
@@ -99,17 +285,264 @@ public class AwsS3Helper {
 						.withCannedAcl(CannedAccessControlList.PublicRead));
 	}
 
+	/**
+	 * Uploads a (large) file as a multipart upload, sending several parts at the same time. Files no bigger than one
+	 * part are uploaded in one piece instead.
+	 * <p>
+	 * Progress is recorded in a manifest file as each part finishes. If the upload is interrupted, calling this again
+	 * with the same file, destination, part size and manifest only uploads the parts that are missing. The manifest is
+	 * deleted once the upload is complete.
+	 * 
+	 * @param bucket Bucket to upload to
+	 * @param objectKey Key for the file
+	 * @param fileToUpload File to upload
+	 * @param metadata Content type etc. of the file
+	 * @param partSize Size of each part in bytes. S3 requires at least 5 MB, and it is increased if the file would
+	 * need more than 10,000 parts.
+	 * @param concurrency Number of parts uploaded at the same time
+	 * @param manifestFile File to record the progress of the upload in
+	 * @throws IOException if a part cannot be uploaded or the manifest cannot be written. The upload can be resumed.
+	 * @throws InterruptedException if interrupted while waiting for parts. The upload can be resumed.
+	 */
+	public void uploadPublicFileInParts(@Nonnull Bucket bucket, @Nonnull String objectKey,
+			@Nonnull File fileToUpload, @Nonnull ObjectMetadata metadata, long partSize, int concurrency,
+			@Nonnull File manifestFile) throws IOException, InterruptedException {
+		final long fileLength = fileToUpload.length();
+		partSize = Math.max(partSize, MINIMUM_PART_SIZE);
+		partSize = Math.max(partSize, (fileLength + MAXIMUM_PART_COUNT - 1) / MAXIMUM_PART_COUNT);
+		final int partCount = (int) ((fileLength + partSize - 1) / partSize);
+
+		if (partCount <= 1) {
+			metadata.setContentLength(fileLength);
+			getS3Client().putObject(
+					new PutObjectRequest(bucket.getName(), objectKey, fileToUpload).withMetadata(metadata)
+							.withCannedAcl(CannedAccessControlList.PublicRead));
+			return;
+		}
+
+		final AmazonS3 s3 = getS3Client();
+		final UploadManifest manifest = resumeOrStartUpload(bucket.getName(), objectKey, fileToUpload, metadata,
+				partSize, manifestFile);
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+		try {
+			List<Future<?>> futures = new ArrayList<>(partCount);
+			for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+				if (manifest.hasPart(partNumber)) continue;
+
+				final long offset = (partNumber - 1) * partSize;
+				final UploadPartRequest request = new UploadPartRequest().withBucketName(bucket.getName())
+						.withKey(objectKey).withUploadId(manifest.getUploadId()).withPartNumber(partNumber)
+						.withFile(fileToUpload).withFileOffset(offset)
+						.withPartSize(Math.min(partSize, fileLength - offset)).withLastPart(partNumber == partCount);
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						PartETag eTag = s3.uploadPart(request).getPartETag();
+						manifest.putPart(eTag.getPartNumber(), eTag.getETag());
+						manifest.save();
+						return null;
+					}
+				}));
+			}
+
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				}
+				catch (ExecutionException e) {
+					throw new IOException("Upload of " + fileToUpload + " failed; run again to resume it", e.getCause());
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket.getName(), objectKey, manifest
+				.getUploadId(), manifest.getPartETags()));
+		manifest.delete();
+	}
+
+	/**
+	 * Picks up the upload recorded in the manifest if it is for the same file and S3 still has it, otherwise starts a
+	 * new one. The parts S3 says it has are the ones that count, whatever the manifest says.
+	 */
+	@Nonnull
+	private UploadManifest resumeOrStartUpload(@Nonnull String bucketName, @Nonnull String objectKey,
+			@Nonnull File fileToUpload, @Nonnull ObjectMetadata metadata, long partSize, @Nonnull File manifestFile)
+			throws IOException {
+		AmazonS3 s3 = getS3Client();
+
+		UploadManifest manifest = UploadManifest.load(manifestFile);
+		if (manifest != null && manifest.isFor(bucketName, objectKey, fileToUpload, partSize)) {
+			try {
+				manifest.clearParts();
+				ListPartsRequest request = new ListPartsRequest(bucketName, objectKey, manifest.getUploadId());
+				PartListing listing;
+				do {
+					listing = s3.listParts(request);
+					for (PartSummary part : listing.getParts())
+						manifest.putPart(part.getPartNumber(), part.getETag());
+					request.setPartNumberMarker(listing.getNextPartNumberMarker());
+				} while (listing.isTruncated());
+				manifest.save();
+				return manifest;
+			}
+			catch (AmazonS3Exception e) {
+				if (e.getStatusCode() != 404) throw e;
+				// the upload was completed or aborted, so start a new one
+			}
+		}
+
+		String uploadId = s3.initiateMultipartUpload(
+				new InitiateMultipartUploadRequest(bucketName, objectKey, metadata)
+						.withCannedACL(CannedAccessControlList.PublicRead)).getUploadId();
+		manifest = new UploadManifest(manifestFile, bucketName, objectKey, uploadId, fileToUpload.length(),
+				fileToUpload.lastModified(), partSize);
+		manifest.save();
+		return manifest;
+	}
+
+	/**
+	 * Uploads content from memory, so nothing has to be written to disk first. The content length is set from the
+	 * length given, and the MD5 is sent so S3 can verify what it received.
+	 * 
+	 * @param bucket Bucket to upload to
+	 * @param objectKey Key for the content
+	 * @param content Buffer holding the content
+	 * @param length Number of bytes at the start of the buffer to upload
+	 * @param metadata Content type, cache control, encoding, ... of the content. The length and MD5 are filled in.
+	 * @return Result of the upload
+	 */
+	@Nonnull
+	public PutObjectResult uploadPublicContent(@Nonnull Bucket bucket, @Nonnull String objectKey,
+			@Nonnull byte[] content, int length, @Nonnull ObjectMetadata metadata) {
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) {
+			// impossible - every JVM is required to support MD5
+			throw new IllegalStateException(e);
+		}
+		md5.update(content, 0, length);
+
+		metadata.setContentLength(length);
+		metadata.setContentMD5(Base64.encodeAsString(md5.digest()));
+		return getS3Client().putObject(
+				new PutObjectRequest(bucket.getName(), objectKey, new ByteArrayInputStream(content, 0, length),
+						metadata).withCannedAcl(CannedAccessControlList.PublicRead));
+	}
+
+	/**
+	 * Looks up a single object with a HEAD request.
+	 * 
+	 * @param bucket Bucket containing the object
+	 * @param objectKey Key of the object
+	 * @return Metadata of the object, or <code>null</code> if there is no such object
+	 */
+	@Nullable
+	public ObjectMetadata getObjectMetadata(@Nonnull Bucket bucket, @Nonnull String objectKey) {
+		try {
+			return getS3Client().getObjectMetadata(bucket.getName(), objectKey);
+		}
+		catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404) return null;
+			throw e;
+		}
+	}
+
 	/**
 	 * @param bucket
 	 * @param objectKey
-	 * @return Information about the object
+	 * @return Information about the object, or <code>null</code> if there is no such object
 	 */
 	@Nullable
 	public S3ObjectSummary getObjectSummary(@Nonnull Bucket bucket, @Nonnull String objectKey) {
-		ObjectListing listObjects = getS3Client().listObjects(
-				new ListObjectsRequest().withBucketName(bucket.getName()).withPrefix(objectKey));
-		for (S3ObjectSummary summary : listObjects.getObjectSummaries())
-			if (summary.getKey().equals(objectKey)) return summary;
-		return null;
+		ObjectMetadata metadata = getObjectMetadata(bucket, objectKey);
+		return metadata == null ? null : toSummary(bucket.getName(), objectKey, metadata);
+	}
+
+	/**
+	 * Looks up many objects in as few requests as possible. The keys are grouped by their "directory" (the part of the
+	 * key up to the last slash) and each directory is listed once, page by page, so checking a whole year of audio
+	 * costs a few list calls. A directory with only one requested key is looked up with a HEAD request instead.
+	 * 
+	 * @param bucket Bucket containing the objects
+	 * @param objectKeys Keys of the objects to look up
+	 * @return Information about each object, keyed by object key. Keys of objects that do not exist are not in the map.
+	 */
+	@Nonnull
+	public Map<String, S3ObjectSummary> getObjectSummaries(@Nonnull Bucket bucket,
+			@Nonnull Collection<String> objectKeys) {
+		// group the keys by the prefix that will list them
+		Map<String, Set<String>> keysByPrefix = new LinkedHashMap<>();
+		for (String objectKey : objectKeys) {
+			String prefix = getListingPrefix(objectKey);
+			if (!keysByPrefix.containsKey(prefix)) keysByPrefix.put(prefix, new LinkedHashSet<String>());
+			keysByPrefix.get(prefix).add(objectKey);
+		}
+
+		Map<String, S3ObjectSummary> summaries = new LinkedHashMap<>();
+		for (Map.Entry<String, Set<String>> group : keysByPrefix.entrySet()) {
+			Set<String> keys = group.getValue();
+			if (keys.size() == 1) {
+				String objectKey = keys.iterator().next();
+				S3ObjectSummary summary = getObjectSummary(bucket, objectKey);
+				if (summary != null) summaries.put(objectKey, summary);
+				continue;
+			}
+
+			for (S3ObjectSummary summary : listObjectSummaries(bucket.getName(), group.getKey()))
+				if (keys.contains(summary.getKey())) summaries.put(summary.getKey(), summary);
+		}
+		return summaries;
+	}
+
+	/**
+	 * Lists every object in the bucket whose key starts with the prefix, following the listing across as many pages as
+	 * it takes.
+	 * 
+	 * @param bucket Bucket to list
+	 * @param prefix Prefix of the keys to list, <code>null</code> for the entire bucket
+	 * @return Summaries of all matching objects
+	 */
+	@Nonnull
+	public List<S3ObjectSummary> listObjectSummaries(@Nonnull Bucket bucket, @Nullable String prefix) {
+		return listObjectSummaries(bucket.getName(), prefix);
+	}
+
+	@Nonnull
+	private List<S3ObjectSummary> listObjectSummaries(@Nonnull String bucketName, @Nullable String prefix) {
+		AmazonS3 s3 = getS3Client();
+		List<S3ObjectSummary> summaries = new ArrayList<>();
+		ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix);
+		ListObjectsV2Result result;
+		do {
+			result = s3.listObjectsV2(request);
+			summaries.addAll(result.getObjectSummaries());
+			request.setContinuationToken(result.getNextContinuationToken());
+		} while (result.isTruncated());
+		return summaries;
+	}
+
+	/** Keys at the root of a bucket are listed by their full key so we don't list the whole bucket */
+	@Nonnull
+	private String getListingPrefix(@Nonnull String objectKey) {
+		int slash = objectKey.lastIndexOf('/');
+		return slash < 0 ? objectKey : objectKey.substring(0, slash + 1);
+	}
+
+	@Nonnull
+	private S3ObjectSummary toSummary(@Nonnull String bucketName, @Nonnull String objectKey,
+			@Nonnull ObjectMetadata metadata) {
+		S3ObjectSummary summary = new S3ObjectSummary();
+		summary.setBucketName(bucketName);
+		summary.setKey(objectKey);
+		summary.setSize(metadata.getContentLength());
+		summary.setETag(metadata.getETag());
+		summary.setLastModified(metadata.getLastModified());
+		summary.setStorageClass(metadata.getStorageClass());
+		return summary;
 	}
 }
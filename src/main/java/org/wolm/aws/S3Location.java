@@ -0,0 +1,93 @@
+package org.wolm.aws;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Bucket and key of an S3 object, as found in a public S3 URL.
+ * <p>
+ * Both the virtual-hosted style (http://bucket.s3.amazonaws.com/key) and the path style
+ * (http://s3-us-west-2.amazonaws.com/bucket/key) of URL are recognized, with or without a region.
+ *
+ * @author wolm
+ */
+public class S3Location {
+	/** host of a path-style URL, like s3.amazonaws.com, s3-us-west-2.amazonaws.com or s3.us-west-2.amazonaws.com */
+	private static final Pattern PATH_STYLE_HOST = Pattern.compile("s3([.-][a-z0-9-]+)?\\.amazonaws\\.com");
+	/** host of a virtual-hosted-style URL, like bucket.s3.amazonaws.com or bucket.s3-us-west-2.amazonaws.com */
+	private static final Pattern VIRTUAL_HOST = Pattern.compile("(.+)\\.s3([.-][a-z0-9-]+)?\\.amazonaws\\.com");
+
+	@Nonnull
+	private final String bucketName;
+	@Nonnull
+	private final String key;
+
+	public S3Location(@Nonnull String bucketName, @Nonnull String key) {
+		super();
+		this.bucketName = bucketName;
+		this.key = key;
+	}
+
+	/**
+	 * @param url Any URL
+	 * @return The bucket and key the URL points to, or <code>null</code> if it is not an S3 URL
+	 */
+	@Nullable
+	public static S3Location fromUrl(@Nullable String url) {
+		if (url == null) return null;
+
+		URI uri;
+		try {
+			uri = new URI(url.trim());
+		}
+		catch (URISyntaxException e) {
+			return null;
+		}
+		String host = uri.getHost();
+		String path = uri.getPath();
+		if (host == null || path == null || !path.startsWith("/")) return null;
+		host = host.toLowerCase();
+		path = path.substring(1);
+
+		if (PATH_STYLE_HOST.matcher(host).matches()) {
+			int slash = path.indexOf('/');
+			if (slash <= 0 || slash == path.length() - 1) return null;
+			return new S3Location(path.substring(0, slash), path.substring(slash + 1));
+		}
+
+		Matcher virtualHost = VIRTUAL_HOST.matcher(host);
+		if (virtualHost.matches()) {
+			if (path.isEmpty()) return null;
+			return new S3Location(virtualHost.group(1), path);
+		}
+
+		return null;
+	}
+
+	@Nonnull
+	public String getBucketName() {
+		return bucketName;
+	}
+
+	@Nonnull
+	public String getKey() {
+		return key;
+	}
+
+	/** @return The "directory" part of the key including the trailing slash (like "2021/"), or "" if there is none */
+	@Nonnull
+	public String getKeyPrefix() {
+		int slash = key.lastIndexOf('/');
+		return slash < 0 ? "" : key.substring(0, slash + 1);
+	}
+
+	@Override
+	public String toString() {
+		return bucketName + ":" + key;
+	}
+}
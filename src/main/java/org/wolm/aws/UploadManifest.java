@@ -0,0 +1,164 @@
+package org.wolm.aws;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.amazonaws.services.s3.model.PartETag;
+
+/**
+ * Local record of a multipart upload in progress, so an interrupted upload can pick up where it left off instead of
+ * starting over. It remembers which file is being uploaded where, the upload ID S3 gave us, and the ETag of every part
+ * that has finished.
+ *
+ * @author wolm
+ */
+class UploadManifest {
+	private static final String PART_PREFIX = "part.";
+
+	@Nonnull
+	private final File manifestFile;
+	@Nonnull
+	private final String bucketName;
+	@Nonnull
+	private final String objectKey;
+	@Nonnull
+	private final String uploadId;
+	private final long fileLength;
+	private final long fileLastModified;
+	private final long partSize;
+	private final Map<Integer, String> partETags = new TreeMap<>();
+
+	UploadManifest(@Nonnull File manifestFile, @Nonnull String bucketName, @Nonnull String objectKey,
+			@Nonnull String uploadId, long fileLength, long fileLastModified, long partSize) {
+		super();
+		this.manifestFile = manifestFile;
+		this.bucketName = bucketName;
+		this.objectKey = objectKey;
+		this.uploadId = uploadId;
+		this.fileLength = fileLength;
+		this.fileLastModified = fileLastModified;
+		this.partSize = partSize;
+	}
+
+	/**
+	 * @param manifestFile File the manifest was saved in
+	 * @return The saved manifest, or <code>null</code> if there is none or it cannot be read
+	 */
+	@Nullable
+	static UploadManifest load(@Nonnull File manifestFile) {
+		if (!manifestFile.exists()) return null;
+
+		Properties properties = new Properties();
+		try (Reader reader = new FileReader(manifestFile)) {
+			properties.load(reader);
+		}
+		catch (IOException e) {
+			return null;
+		}
+
+		String bucketName = properties.getProperty("bucket");
+		String objectKey = properties.getProperty("key");
+		String uploadId = properties.getProperty("uploadId");
+		if (bucketName == null || objectKey == null || uploadId == null) return null;
+
+		try {
+			long fileLength = Long.parseLong(properties.getProperty("fileLength"));
+			long fileLastModified = Long.parseLong(properties.getProperty("fileLastModified"));
+			long partSize = Long.parseLong(properties.getProperty("partSize"));
+			UploadManifest manifest = new UploadManifest(manifestFile, bucketName, objectKey, uploadId, fileLength,
+					fileLastModified, partSize);
+			for (String name : properties.stringPropertyNames()) {
+				if (name.startsWith(PART_PREFIX)) {
+					manifest.partETags.put(Integer.valueOf(name.substring(PART_PREFIX.length())),
+							properties.getProperty(name));
+				}
+			}
+			return manifest;
+		}
+		catch (NumberFormatException e) {
+			// incomplete or garbled manifest, just start over
+			return null;
+		}
+	}
+
+	/** Writes the manifest, replacing the file atomically so an interruption never leaves half a manifest */
+	synchronized void save() throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("bucket", bucketName);
+		properties.setProperty("key", objectKey);
+		properties.setProperty("uploadId", uploadId);
+		properties.setProperty("fileLength", Long.toString(fileLength));
+		properties.setProperty("fileLastModified", Long.toString(fileLastModified));
+		properties.setProperty("partSize", Long.toString(partSize));
+		for (Map.Entry<Integer, String> part : partETags.entrySet())
+			properties.setProperty(PART_PREFIX + part.getKey(), part.getValue());
+
+		File directory = manifestFile.getAbsoluteFile().getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+		File tempFile = File.createTempFile(manifestFile.getName(), ".tmp", directory);
+		try {
+			try (Writer writer = new FileWriter(tempFile)) {
+				properties.store(writer, "Multipart upload of " + objectKey);
+			}
+			Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			tempFile.delete();
+		}
+	}
+
+	void delete() {
+		manifestFile.delete();
+	}
+
+	/**
+	 * @return <code>true</code> if this manifest describes an upload of the same (unchanged) file to the same place in
+	 * the same size parts
+	 */
+	boolean isFor(@Nonnull String bucketName, @Nonnull String objectKey, @Nonnull File file, long partSize) {
+		return this.bucketName.equals(bucketName) && this.objectKey.equals(objectKey)
+				&& this.fileLength == file.length() && this.fileLastModified == file.lastModified()
+				&& this.partSize == partSize;
+	}
+
+	@Nonnull
+	String getUploadId() {
+		return uploadId;
+	}
+
+	synchronized void putPart(int partNumber, @Nonnull String eTag) {
+		partETags.put(partNumber, eTag);
+	}
+
+	synchronized void clearParts() {
+		partETags.clear();
+	}
+
+	synchronized boolean hasPart(int partNumber) {
+		return partETags.containsKey(partNumber);
+	}
+
+	/** @return ETags of all finished parts, in part number order */
+	@Nonnull
+	synchronized List<PartETag> getPartETags() {
+		List<PartETag> eTags = new ArrayList<>(partETags.size());
+		for (Map.Entry<Integer, String> part : partETags.entrySet())
+			eTags.add(new PartETag(part.getKey(), part.getValue()));
+		return eTags;
+	}
+}
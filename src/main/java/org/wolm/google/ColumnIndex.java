@@ -0,0 +1,143 @@
+package org.wolm.google;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Dictionary encoding of a column with few distinct values (like visibility or playlist), with a bitmap of the rows
+ * that hold each value.
+ * <p>
+ * Finding the rows with a value is then a lookup instead of comparing the value of every row, and filters on several
+ * indexed columns combine with {@link BitSet#and(BitSet)}. Bits are row indexes in {@link RowSource#getRows()}.
+ *
+ * @author wolm
+ */
+public class ColumnIndex {
+	private static final int NO_VALUE = -1;
+
+	@Nonnull
+	private final String columnName;
+	/** distinct values of the column, sorted so values with a prefix are next to each other */
+	@Nonnull
+	private final String[] dictionary;
+	/** position of each row's value in the dictionary, {@link #NO_VALUE} for empty cells */
+	@Nonnull
+	private final int[] codes;
+	/** rows holding each value of the dictionary */
+	@Nonnull
+	private final BitSet[] bitmaps;
+
+	private ColumnIndex(@Nonnull String columnName, @Nonnull String[] dictionary, @Nonnull int[] codes,
+			@Nonnull BitSet[] bitmaps) {
+		super();
+		this.columnName = columnName;
+		this.dictionary = dictionary;
+		this.codes = codes;
+		this.bitmaps = bitmaps;
+	}
+
+	/**
+	 * @param rows Rows of a worksheet
+	 * @param columnName Column to index
+	 * @return Index of the column
+	 */
+	@Nonnull
+	static ColumnIndex build(@Nonnull List<GoogleRow> rows, @Nonnull String columnName) {
+		int rowCount = rows.size();
+		String[] values = new String[rowCount];
+		TreeSet<String> distinctValues = new TreeSet<>();
+		for (int i = 0; i < rowCount; i++) {
+			values[i] = rows.get(i).getValue(columnName);
+			if (values[i] != null) distinctValues.add(values[i]);
+		}
+
+		String[] dictionary = distinctValues.toArray(new String[distinctValues.size()]);
+		BitSet[] bitmaps = new BitSet[dictionary.length];
+		for (int code = 0; code < dictionary.length; code++)
+			bitmaps[code] = new BitSet(rowCount);
+
+		int[] codes = new int[rowCount];
+		for (int i = 0; i < rowCount; i++) {
+			codes[i] = values[i] == null ? NO_VALUE : Arrays.binarySearch(dictionary, values[i]);
+			if (codes[i] != NO_VALUE) bitmaps[codes[i]].set(i);
+		}
+		return new ColumnIndex(columnName, dictionary, codes, bitmaps);
+	}
+
+	@Nonnull
+	public String getColumnName() {
+		return columnName;
+	}
+
+	/** @return Number of rows indexed */
+	public int getRowCount() {
+		return codes.length;
+	}
+
+	/** @return Number of distinct (non-empty) values in the column */
+	public int getDistinctValueCount() {
+		return dictionary.length;
+	}
+
+	/**
+	 * @param rowIndex Index of a row
+	 * @return Value of the column in the row, <code>null</code> if it is empty
+	 */
+	@Nullable
+	public String getValue(int rowIndex) {
+		int code = codes[rowIndex];
+		return code == NO_VALUE ? null : dictionary[code];
+	}
+
+	/**
+	 * @param value A value of the column
+	 * @return Rows whose value is equal to <code>value</code>. The caller may modify the bitmap.
+	 */
+	@Nonnull
+	public BitSet getRowsEqualTo(@Nonnull String value) {
+		int code = Arrays.binarySearch(dictionary, value);
+		return code < 0 ? new BitSet() : (BitSet) bitmaps[code].clone();
+	}
+
+	/**
+	 * @param prefix Start of values of the column
+	 * @return Rows whose value starts with <code>prefix</code>. The caller may modify the bitmap.
+	 */
+	@Nonnull
+	public BitSet getRowsStartingWith(@Nonnull String prefix) {
+		BitSet rows = new BitSet();
+		int code = Arrays.binarySearch(dictionary, prefix);
+		if (code < 0) code = -code - 1; // the first value after the prefix
+		for (; code < dictionary.length && dictionary[code].startsWith(prefix); code++)
+			rows.or(bitmaps[code]);
+		return rows;
+	}
+
+	/**
+	 * @return Approximate number of bytes of memory used by the index (the dictionary, row codes and bitmaps)
+	 */
+	public long getMemoryFootprint() {
+		long bytes = 16 + arrayBytes(4, codes.length) + arrayBytes(4, dictionary.length)
+				+ arrayBytes(4, bitmaps.length);
+		for (String value : dictionary)
+			bytes += 24 + arrayBytes(2, value.length());
+		for (BitSet bitmap : bitmaps)
+			bytes += 24 + arrayBytes(8, (bitmap.size() + 63) / 64);
+		return bytes;
+	}
+
+	private static long arrayBytes(int elementBytes, int length) {
+		return 16 + (long) elementBytes * length;
+	}
+
+	@Override
+	public String toString() {
+		return columnName + ": " + dictionary.length + " values in " + codes.length + " rows, about "
+				+ getMemoryFootprint() + " bytes";
+	}
+}
@@ -0,0 +1,178 @@
+package org.wolm.google;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The values of one column of a worksheet, read once and converted to the type they hold, so that rows can be ordered
+ * by the column without reading or parsing cells for every comparison.
+ * <p>
+ * A column whose cells are all dates is ordered by day, one whose cells are all numbers is ordered numerically, and
+ * anything else is ordered as text. Empty cells are greater than any value, as in
+ * {@link org.apache.commons.lang3.ObjectUtils#compare(Comparable, Comparable, boolean)}. The row order for each
+ * direction is worked out once and kept, so later requests for it are free.
+ *
+ * @author wolm
+ */
+class ColumnKeys {
+	private static final Pattern YEAR_MONTH_DAY = Pattern.compile("(\\d+)-(\\d+)-(\\d+)");
+
+	enum Type {
+		DATE, NUMBER, TEXT
+	}
+
+	@Nonnull
+	private final Type type;
+	private final int size;
+	private final boolean[] empty;
+	private final long[] days;
+	private final double[] numbers;
+	private final String[] texts;
+
+	// row orders, worked out when first asked for
+	private int[] ascendingOrder = null;
+	private int[] descendingOrder = null;
+
+	private ColumnKeys(@Nonnull Type type, boolean[] empty, long[] days, double[] numbers, String[] texts) {
+		super();
+		this.type = type;
+		this.size = empty.length;
+		this.empty = empty;
+		this.days = days;
+		this.numbers = numbers;
+		this.texts = texts;
+	}
+
+	/**
+	 * @param rows Rows of a worksheet
+	 * @param columnName Column to read
+	 * @return The keys of the column, typed as dates or numbers if every (non-empty) cell is one
+	 */
+	@Nonnull
+	static ColumnKeys extract(@Nonnull List<GoogleRow> rows, @Nonnull String columnName) {
+		int size = rows.size();
+		String[] texts = new String[size];
+		boolean[] empty = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			texts[i] = rows.get(i).getValue(columnName);
+			empty[i] = texts[i] == null;
+		}
+
+		long[] days = new long[size];
+		boolean allDates = true;
+		for (int i = 0; i < size && allDates; i++) {
+			if (empty[i]) continue;
+			Long day = toEpochDay(texts[i]);
+			if (day == null) allDates = false;
+			else days[i] = day;
+		}
+		if (allDates) return new ColumnKeys(Type.DATE, empty, days, null, null);
+
+		double[] numbers = new double[size];
+		boolean allNumbers = true;
+		for (int i = 0; i < size && allNumbers; i++) {
+			if (empty[i]) continue;
+			try {
+				numbers[i] = Double.parseDouble(texts[i]);
+				if (Double.isNaN(numbers[i])) allNumbers = false;
+			}
+			catch (NumberFormatException e) {
+				allNumbers = false;
+			}
+		}
+		if (allNumbers) return new ColumnKeys(Type.NUMBER, empty, null, numbers, null);
+
+		return new ColumnKeys(Type.TEXT, empty, null, null, texts);
+	}
+
+	/**
+	 * @param value Date in the form the worksheet gives them, like 2014-01-05
+	 * @return Number of days since 1970-01-01, or <code>null</code> if the value is not a valid date
+	 */
+	static Long toEpochDay(@Nonnull String value) {
+		Matcher matcher = YEAR_MONTH_DAY.matcher(value);
+		if (!matcher.matches() || matcher.group(1).length() > 9) return null;
+		long year = Long.parseLong(matcher.group(1));
+		int month = Integer.parseInt(matcher.group(2));
+		int day = Integer.parseInt(matcher.group(3));
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) return null;
+
+		// days from the civil calendar, shifted so the year starts in March and leap days fall at its end
+		long shiftedYear = month <= 2 ? year - 1 : year;
+		long era = (shiftedYear >= 0 ? shiftedYear : shiftedYear - 399) / 400;
+		long yearOfEra = shiftedYear - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static int daysInMonth(long year, int month) {
+		if (month == 2) return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+	}
+
+	@Nonnull
+	Type getType() {
+		return type;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Compares the keys of two rows, ascending, with empty cells greater than any value.
+	 */
+	int compare(int row1, int row2) {
+		if (empty[row1]) return empty[row2] ? 0 : 1;
+		if (empty[row2]) return -1;
+		switch (type) {
+		case DATE:
+			return Long.compare(days[row1], days[row2]);
+		case NUMBER:
+			return Double.compare(numbers[row1], numbers[row2]);
+		default:
+			return texts[row1].compareTo(texts[row2]);
+		}
+	}
+
+	/**
+	 * @param ascending <code>true</code> for ascending, <code>false</code> for descending
+	 * @return Indexes of the rows in order of this column. Rows with equal keys stay in their original order. Do not
+	 * modify the array; it is shared.
+	 */
+	@Nonnull
+	synchronized int[] getOrder(boolean ascending) {
+		if (ascending) {
+			if (ascendingOrder == null) ascendingOrder = sort(true);
+			return ascendingOrder;
+		}
+		if (descendingOrder == null) descendingOrder = sort(false);
+		return descendingOrder;
+	}
+
+	private int[] sort(final boolean ascending) {
+		Integer[] boxedOrder = new Integer[size];
+		for (int i = 0; i < size; i++)
+			boxedOrder[i] = i;
+
+		// a stable sort, so equal keys keep their order in either direction, just as sorting the rows did
+		Arrays.sort(boxedOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer row1, Integer row2) {
+				int comparison = ColumnKeys.this.compare(row1, row2);
+				return ascending ? comparison : -comparison;
+			}
+		});
+
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = boxedOrder[i];
+		return order;
+	}
+}
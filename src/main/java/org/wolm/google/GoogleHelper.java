@@ -13,6 +13,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -46,6 +50,14 @@ import com.google.gdata.util.ServiceException;
  * If these files exist, this class will be initialized with the values found therein. If these files do not exist, then
  * you must configure this object manually with {@code setServiceAccountId()} and {@code setP12KeyFile()} before using
  * it.
+ * <p>
+ * Rows of worksheets are kept in ~/.wolm/cache (see {@link WorksheetSnapshot}) and only downloaded again when the
+ * worksheet changes, and then only the rows that changed (see {@code setIncrementalSync()}). Use
+ * {@code setCacheDirectory(null)} to always download them.
+ * <p>
+ * The access token of the service account is kept in ~/.wolm/google-token.properties (see {@link TokenStore}) and
+ * reused by later runs until shortly before it expires. Long-running programs can
+ * {@code startBackgroundTokenRefresh()} so that a request never has to wait for a new token.
  * 
  * @author wolm
  */
@@ -58,6 +70,11 @@ public class GoogleHelper {
 	private SpreadsheetService service;
 	private String serviceAccountId;
 	private File p12KeyFile;
+	private File cacheDirectory = new File(System.getenv("HOME") + "/.wolm/cache");
+	private boolean incrementalSync = true;
+	private File tokenFile = new File(System.getenv("HOME") + "/.wolm/google-token.properties");
+	private Credential credential;
+	private ScheduledExecutorService tokenRefresher;
 
 	public GoogleHelper(String applicationName) {
 		super();
@@ -80,7 +97,7 @@ public class GoogleHelper {
 		return serviceAccountId;
 	}
 
-	public void setServiceAccountId(String serviceAccountId) {
+	public synchronized void setServiceAccountId(String serviceAccountId) {
 		this.serviceAccountId = serviceAccountId;
 		service = null;
 	}
@@ -89,17 +106,100 @@ public class GoogleHelper {
 		return p12KeyFile;
 	}
 
-	public void setP12KeyFile(File p12KeyFile) {
+	public synchronized void setP12KeyFile(File p12KeyFile) {
 		this.p12KeyFile = p12KeyFile;
 		service = null;
 	}
 
-	/** @return The spreadsheet service installed with WOLM credentials */
-	SpreadsheetService getService() throws AuthenticationException {
+	/** @return Directory where worksheet rows are kept between runs, <code>null</code> if they are not kept */
+	@Nullable
+	public File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(@Nullable File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * @return <code>true</code> if a changed worksheet is brought up to date by downloading only the rows changed
+	 * since it was last read, <code>false</code> if the whole worksheet is downloaded
+	 */
+	public boolean isIncrementalSync() {
+		return incrementalSync;
+	}
+
+	public void setIncrementalSync(boolean incrementalSync) {
+		this.incrementalSync = incrementalSync;
+	}
+
+	/** @return File where the access token is kept between runs, <code>null</code> if it is not kept */
+	@Nullable
+	public File getTokenFile() {
+		return tokenFile;
+	}
+
+	public synchronized void setTokenFile(@Nullable File tokenFile) {
+		this.tokenFile = tokenFile;
+		service = null;
+	}
+
+	/**
+	 * Refreshes the access token in the background before it expires, for programs that run for a long time. The
+	 * refresh happens on a daemon thread, and stops with {@link #stopBackgroundTokenRefresh()}.
+	 *
+	 * @param checkMillis How often to check whether the token is about to expire
+	 */
+	public synchronized void startBackgroundTokenRefresh(long checkMillis) {
+		if (tokenRefresher != null) return;
+
+		tokenRefresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Google token refresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		tokenRefresher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				refreshTokenIfExpiring();
+			}
+		}, 0, checkMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stopBackgroundTokenRefresh() {
+		if (tokenRefresher == null) return;
+		tokenRefresher.shutdownNow();
+		tokenRefresher = null;
+	}
+
+	private void refreshTokenIfExpiring() {
+		Credential credential;
+		synchronized (this) {
+			credential = this.credential;
+		}
+		if (credential == null) return;
+
+		Long expiresInSeconds = credential.getExpiresInSeconds();
+		if (expiresInSeconds != null && expiresInSeconds * 1000 > TokenStore.MINIMUM_LIFETIME_MILLIS) return;
+		try {
+			credential.refreshToken();
+		}
+		catch (IOException e) {
+			// requests will try again when they need the token
+			System.out.println("WARNING: Cannot refresh the Google access token: " + e.getMessage());
+		}
+	}
+
+	/** @return The spreadsheet service installed with WOLM credentials. It may be used by several threads at once. */
+	synchronized SpreadsheetService getService() throws AuthenticationException {
 		try {
 			if (service == null) {
+				credential = getOAuth2Credentials();
 				service = new SpreadsheetService(applicationName);
-				service.setOAuth2Credentials(getOAuth2Credentials());
+				service.setOAuth2Credentials(credential);
 			}
 			return service;
 		}
@@ -203,7 +303,8 @@ public class GoogleHelper {
 	}
 
 	/**
-	 * Creates a set of OAuth2 credentials needed to connect to Google API
+	 * Creates a set of OAuth2 credentials needed to connect to Google API. The credentials start with the token saved
+	 * by an earlier run when it is still good, and save every new token.
 	 * 
 	 * @return
 	 * @throws GeneralSecurityException
@@ -216,6 +317,11 @@ public class GoogleHelper {
 		builder.setServiceAccountId(getServiceAccountId());
 		builder.setServiceAccountScopes(Arrays.asList("https://spreadsheets.google.com/feeds"));
 		builder.setServiceAccountPrivateKeyFromP12File(getP12KeyFile());
-		return builder.build();
+
+		TokenStore tokenStore = getTokenFile() == null ? null : new TokenStore(getTokenFile(), getServiceAccountId());
+		if (tokenStore != null) builder.addRefreshListener(tokenStore);
+		GoogleCredential credential = builder.build();
+		if (tokenStore != null) tokenStore.restore(credential);
+		return credential;
 	}
 }
@@ -10,19 +10,24 @@ import javax.annotation.Nonnull;
 import com.google.gdata.data.spreadsheet.ListEntry;
 
 public class GoogleRow {
-	private final GoogleWorksheet worksheet;
+	private final RowSource source;
 	private final ListEntry row;
 	private final SimpleDateFormat gregorianDateFormatter = new SimpleDateFormat("MM/dd/yyyy");
 	private final SimpleDateFormat yearMonthDayDateFormatter = new SimpleDateFormat("yyyy-MM-dd");
 
-	public GoogleRow(@Nonnull GoogleWorksheet worksheet, @Nonnull ListEntry row) {
+	public GoogleRow(@Nonnull RowSource source, @Nonnull ListEntry row) {
 		super();
-		this.worksheet = worksheet;
+		this.source = source;
 		this.row = row;
 	}
 
+	public RowSource getSource() {
+		return source;
+	}
+
+	/** @return The worksheet the row is from, <code>null</code> if it is not from a Google worksheet */
 	public GoogleWorksheet getWorksheet() {
-		return worksheet;
+		return source instanceof GoogleWorksheet ? (GoogleWorksheet) source : null;
 	}
 
 	public ListEntry getRow() {
@@ -2,7 +2,15 @@ package org.wolm.google;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 
@@ -70,4 +78,69 @@ public class GoogleSpreadsheet {
 		}
 		return null;
 	}
+
+	/**
+	 * Reads the rows of all worksheets at once.
+	 *
+	 * @param threadCount Maximum number of worksheets to read at the same time
+	 * @return The worksheets that could not be read, with what went wrong. Empty if all were read.
+	 * @throws IOException if the worksheets cannot be listed
+	 * @throws ServiceException if the worksheets cannot be listed
+	 * @throws InterruptedException
+	 * @see #loadRows(Collection, int)
+	 */
+	@Nonnull
+	public Map<GoogleWorksheet, Exception> loadAllRows(int threadCount) throws IOException, ServiceException,
+			InterruptedException {
+		return loadRows(getWorksheets(), threadCount);
+	}
+
+	/**
+	 * Reads the rows of several worksheets at once, instead of waiting for one to download before asking for the next.
+	 * Each worksheet keeps its rows, as if {@link GoogleWorksheet#getRows()} had been called on it. A worksheet that
+	 * cannot be read does not stop the others.
+	 *
+	 * @param worksheets Worksheets to read
+	 * @param threadCount Maximum number of worksheets to read at the same time
+	 * @return The worksheets that could not be read, with what went wrong, in the order they were given. Empty if all
+	 * were read.
+	 * @throws InterruptedException
+	 */
+	@Nonnull
+	public Map<GoogleWorksheet, Exception> loadRows(@Nonnull Collection<GoogleWorksheet> worksheets, int threadCount)
+			throws InterruptedException {
+		Map<GoogleWorksheet, Exception> failures = new LinkedHashMap<>();
+		if (worksheets.isEmpty()) return failures;
+
+		List<GoogleWorksheet> worksheetList = new ArrayList<>(worksheets);
+		List<Callable<Void>> loads = new ArrayList<>(worksheetList.size());
+		for (final GoogleWorksheet worksheet : worksheetList) {
+			loads.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					worksheet.getRows();
+					return null;
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount, loads.size())));
+		try {
+			List<Future<Void>> results = executor.invokeAll(loads);
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					results.get(i).get();
+				}
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					failures.put(worksheetList.get(i), cause instanceof Exception ? (Exception) cause
+							: new ExecutionException(cause));
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return failures;
+	}
 }
@@ -1,33 +1,35 @@
 package org.wolm.google;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
 import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import org.apache.commons.lang3.ObjectUtils;
-
+import com.google.gdata.client.spreadsheet.ListQuery;
+import com.google.gdata.data.DateTime;
 import com.google.gdata.data.spreadsheet.ListEntry;
 import com.google.gdata.data.spreadsheet.ListFeed;
 import com.google.gdata.data.spreadsheet.WorksheetEntry;
-import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.NotModifiedException;
 import com.google.gdata.util.ServiceException;
 
-public class GoogleWorksheet {
+/**
+ * A worksheet (tab) of a Google spreadsheet, read through its list feed.
+ *
+ * @author wolm
+ */
+public class GoogleWorksheet extends RowSource {
 
 	private final GoogleSpreadsheet spreadsheet;
-	private final WorksheetEntry worksheet;
+	private WorksheetEntry worksheet;
 
 	// cached
-	List<GoogleRow> rows = null;
-	List<String> columnNames = null;
+	boolean rowsFromSnapshot = false;
+	int syncedRowCount = -1;
 
 	public GoogleWorksheet(GoogleSpreadsheet spreadsheet, WorksheetEntry worksheet) {
 		super();
@@ -47,6 +49,7 @@ public class GoogleWorksheet {
 		return worksheet;
 	}
 
+	@Override
 	public String getTitle() {
 		return worksheet.getTitle().getPlainText();
 	}
@@ -63,197 +66,224 @@ public class GoogleWorksheet {
 		return worksheet.getCanEdit();
 	}
 
-	/** Causes all caches to be dumped and new data is read from the server */
+	@Override
 	public void refresh() {
-		rows = null;
-		columnNames = null;
+		super.refresh();
+		rowsFromSnapshot = false;
+		syncedRowCount = -1;
 	}
 
-	public List<String> getColumnNames() throws IOException, ServiceException {
-		// use a column name cache for consistency, since Google's data is in a set, which is unordered. this way the
-		// ordering is undefined, but consistent
-		if (columnNames == null) {
-			if (!hasRow(0)) return Collections.emptyList();
-			columnNames = new ArrayList<>(getRow(0).getColumnNames());
-		}
-		return columnNames;
+	/**
+	 * @return Version of the worksheet, which changes whenever the worksheet is edited. <code>null</code> if the server
+	 * does not tell
+	 */
+	@Nullable
+	public String getVersion() {
+		String etag = worksheet.getEtag();
+		DateTime updated = worksheet.getUpdated();
+		if (etag == null && updated == null) return null;
+		return etag + " " + (updated == null ? null : updated.toString());
 	}
 
-	public boolean hasColumn(String columnName) {
+	/**
+	 * Asks the server whether the worksheet was edited since its metadata was read. The worksheet's entry is only
+	 * downloaded if its ETag changed, so polling an unchanged worksheet costs one small request. When it changed, the
+	 * worksheet takes the new metadata and forgets its rows, so the next {@link #getRows()} reads them again (only the
+	 * edited ones when incremental sync is on).
+	 *
+	 * @return <code>true</code> if the worksheet changed
+	 * @throws IOException
+	 * @throws ServiceException
+	 */
+	public boolean checkForChanges() throws IOException, ServiceException {
+		String version = getVersion();
+		WorksheetEntry latest;
 		try {
-			return getColumnNames().contains(columnName);
+			latest = getHelper().getService().getEntry(new URL(worksheet.getSelfLink().getHref()),
+					WorksheetEntry.class, worksheet.getEtag());
 		}
-		catch (Exception e) {
+		catch (NotModifiedException e) {
 			return false;
 		}
+
+		worksheet = latest;
+		if (version != null && version.equals(getVersion())) return false;
+		refresh();
+		return true;
 	}
 
-	public boolean hasRow(int rowIndex) {
-		try {
-			getRow(rowIndex);
-			return true;
-		}
-		catch (IOException | ServiceException e) {
-			return false;
-		}
+	/**
+	 * @return <code>true</code> if the rows were read from the snapshot kept on disk because the worksheet has not
+	 * changed since they were downloaded
+	 */
+	public boolean isRowsFromSnapshot() {
+		return rowsFromSnapshot;
 	}
 
-	public boolean hasCell(int rowIndex, String columnName) {
-		try {
-			GoogleRow row = getRow(rowIndex);
-			return row == null ? false : row.hasColumn(columnName);
-		}
-		catch (IOException | ServiceException e) {
-			return false;
-		}
+	/**
+	 * @return Number of changed rows downloaded to bring the snapshot up to date, <code>-1</code> if the rows were not
+	 * synchronized that way
+	 */
+	public int getSyncedRowCount() {
+		return syncedRowCount;
 	}
 
 	/**
+	 * Rows are read from the {@link WorksheetSnapshot snapshot} kept in the helper's
+	 * {@link GoogleHelper#getCacheDirectory() cache directory} when the worksheet has not changed since it was taken.
+	 * When it has changed, and the helper {@link GoogleHelper#isIncrementalSync() synchronizes incrementally}, only the
+	 * rows edited since the snapshot and the IDs of all rows are downloaded and merged into the snapshot. Otherwise the
+	 * whole worksheet is downloaded. Either way the snapshot is then rewritten.
+	 * 
 	 * @return List of row data for the worksheet
-	 * @throws AuthenticationException
 	 * @throws IOException
 	 * @throws ServiceException
-	 * @throws URISyntaxException
 	 */
+	@Override
 	@Nonnull
-	public List<GoogleRow> getRows() throws IOException, ServiceException {
-		if (rows == null) {
+	protected List<GoogleRow> loadRows() throws IOException, ServiceException {
+		String version = getVersion();
+		WorksheetSnapshot snapshot = version == null ? null : getSnapshot();
+		WorksheetSnapshot.Contents contents = snapshot == null ? null : snapshot.read();
+		List<ListEntry> entries = null;
+		rowsFromSnapshot = false;
+		syncedRowCount = -1;
+
+		if (contents != null && version.equals(contents.getVersion())) {
+			entries = contents.getEntries();
+			rowsFromSnapshot = true;
+		}
+		else if (contents != null && contents.getSyncedAt() != null && getHelper().isIncrementalSync()) {
+			ListFeed changedFeed = getChangedEntries(contents.getSyncedAt());
+			entries = contents.merge(changedFeed.getEntries(), getEntryIds());
+			if (entries != null) {
+				syncedRowCount = changedFeed.getEntries().size();
+				saveSnapshot(snapshot, version, changedFeed.getUpdated(), entries);
+			}
+		}
+
+		if (entries == null) {
 			URL listFeedUrl = worksheet.getListFeedUrl();
 			ListFeed listFeed = getHelper().getService().getFeed(listFeedUrl, ListFeed.class);
-			List<ListEntry> entries = listFeed.getEntries();
-			rows = new ArrayList<>(entries.size());
-			for (ListEntry entry : entries)
-				rows.add(new GoogleRow(this, entry));
+			entries = listFeed.getEntries();
+			if (snapshot != null) saveSnapshot(snapshot, version, listFeed.getUpdated(), entries);
 		}
+
+		List<GoogleRow> rows = new ArrayList<>(entries.size());
+		for (ListEntry entry : entries)
+			rows.add(new GoogleRow(this, entry));
 		return rows;
 	}
 
 	/**
-	 * @param columnName Name of the column to order by
-	 * @return List of row data for the worksheet, ordered by the specified column. <code>null</code> if the requested
-	 * column cannot be found
-	 * @throws AuthenticationException
-	 * @throws IOException
-	 * @throws ServiceException
-	 * @throws URISyntaxException
+	 * Rows that have not been read yet are read by {@link #getRows()} when a snapshot of the worksheet is kept, so an
+	 * unchanged worksheet is read from the snapshot and a changed one downloads no more than {@link #getRows()} would,
+	 * and brings the snapshot up to date. Without snapshots the rows are {@link #streamRows() streamed}.
 	 */
-	@Nullable
-	public List<GoogleRow> getRowsOrderedBy(@Nonnull final String columnName) throws AuthenticationException,
-			IOException, ServiceException, URISyntaxException {
-		return getRowsOrderedBy(columnName, true);
+	@Override
+	@Nonnull
+	protected Iterable<GoogleRow> scanRows() throws IOException, ServiceException {
+		if (rows == null && getVersion() != null && getSnapshot() != null) return getRows();
+		return streamRows();
 	}
 
 	/**
-	 * @param columnName Name of the column to order by
-	 * @param <code>true</code> if the column should be ordered ascending, <code>false</code> if descending
-	 * @return List of row data for the worksheet, ordered by the specified column ordered as requested.
-	 * <code>null</code> if the requested column cannot be found
-	 * @throws AuthenticationException
-	 * @throws IOException
-	 * @throws ServiceException
-	 * @throws URISyntaxException
+	 * @return The rows of the worksheet, read a page of {@link RowStream#DEFAULT_PAGE_SIZE} rows at a time
+	 * @see #streamRows(int)
 	 */
-	@Nullable
-	public List<GoogleRow> getRowsOrderedBy(@Nonnull final String columnName, final boolean ascending)
-			throws AuthenticationException, IOException, ServiceException, URISyntaxException {
-		List<GoogleRow> rows = getRows();
-		if (rows.isEmpty()) return rows;
-		if (!rows.get(0).hasColumn(columnName)) return null;
-
-		Collections.sort(rows, new Comparator<GoogleRow>() {
-			public int compare(GoogleRow row1, GoogleRow row2) {
-				String value1 = row1.getValue(columnName);
-				String value2 = row2.getValue(columnName);
-				return ObjectUtils.compare(value1, value2, true) * (ascending ? 1 : -1);
-			}
-		});
-
-		return rows;
+	@Nonnull
+	public Iterable<GoogleRow> streamRows() {
+		return streamRows(RowStream.DEFAULT_PAGE_SIZE);
 	}
 
 	/**
-	 * @param index Base-0 index of a row
-	 * @return The row with the specified index. <code>null</code> if index is out of range
-	 * @throws ServiceException
-	 * @throws IOException
-	 * @throws AuthenticationException
+	 * Reads the rows of the worksheet a page at a time while they are iterated (see {@link RowStream}), instead of
+	 * downloading them all before the first can be looked at. Useful when only some rows are needed, like with
+	 * {@link RowFilterChain#apply(Iterable)}. The streamed rows are not kept, so once the rows have been read by
+	 * {@link #getRows()} they are iterated from memory instead. Until then every row is downloaded, even when the
+	 * snapshot is current; {@link #getTopRowsOrderedBy(String, RowFilter, int)} reads the snapshot when there is one.
+	 *
+	 * @param pageSize Number of rows to read at a time
+	 * @return The rows of the worksheet, in worksheet order. Its iterator throws the unchecked
+	 * {@link RowStream.PageException} when a page cannot be downloaded; the IOException or ServiceException is its
+	 * cause.
 	 */
-	public GoogleRow getRow(int index) throws IOException, ServiceException {
-		if (index < 0) return null;
-		List<GoogleRow> rows = getRows();
-		return index >= rows.size() ? null : rows.get(index);
+	@Nonnull
+	public Iterable<GoogleRow> streamRows(int pageSize) {
+		if (rows != null) return rows;
+
+		return new RowStream(this, new RowStream.PageSource() {
+			@Override
+			public List<ListEntry> getPage(int startIndex, int maxResults) throws IOException, ServiceException {
+				ListQuery query = new ListQuery(worksheet.getListFeedUrl());
+				query.setStartIndex(startIndex);
+				query.setMaxResults(maxResults);
+				return getHelper().getService().getFeed(query, ListFeed.class).getEntries();
+			}
+		}, pageSize);
 	}
 
 	/**
-	 * Gets the value of a cell. Note this cannot be used to differentiate between a cell that is not legal, and a cell
-	 * that has no value as both return <code>null</code>. Use {@link #hasCell(int,String)} if the difference is
-	 * important
-	 * 
-	 * @param index Base-0 index of a row
-	 * @param columnName Name of a column
-	 * @return The value of the cell with the specified index and column name. <code>null</code> if index is out of
-	 * range or column doesn't exist
-	 * @throws ServiceException
-	 * @throws IOException
-	 * @throws AuthenticationException
+	 * @param since Time (on the server) of the last download
+	 * @return Feed of the rows inserted or edited since then
 	 */
-	public String getCell(int rowIndex, String columnName) throws IOException, ServiceException {
-		GoogleRow row = getRow(rowIndex);
-		return row == null ? null : row.getValue(columnName);
+	private ListFeed getChangedEntries(DateTime since) throws IOException, ServiceException {
+		ListQuery query = new ListQuery(worksheet.getListFeedUrl());
+		query.setUpdatedMin(since);
+		return getHelper().getService().getFeed(query, ListFeed.class);
 	}
 
 	/**
-	 * Gets the value of a cell as a long. Note this cannot be used to differentiate between a cell that is not legal,
-	 * and a cell that has no value as both return <code>null</code>. Use {@link #hasCell(int,String)} if the difference
-	 * is important.
-	 * 
-	 * @param index Base-0 index of a row
-	 * @param columnName Name of a column
-	 * @return The value of the cell with the specified index and column name. <code>null</code> if index is out of
-	 * range or column doesn't exist or cell does not contain a number
-	 * @throws ServiceException
-	 * @throws IOException
-	 * @throws AuthenticationException
+	 * @return IDs of all rows, in worksheet order. Only the IDs are downloaded, not the cells.
 	 */
-	public Long getCellAsLong(int rowIndex, String columnName) throws IOException, ServiceException {
-		GoogleRow row = getRow(rowIndex);
-		return row == null ? null : row.getLongValue(columnName);
+	private List<String> getEntryIds() throws IOException, ServiceException {
+		ListQuery query = new ListQuery(worksheet.getListFeedUrl());
+		query.setFields("entry(id)");
+		List<ListEntry> entries = getHelper().getService().getFeed(query, ListFeed.class).getEntries();
+		List<String> ids = new ArrayList<>(entries.size());
+		for (ListEntry entry : entries)
+			ids.add(entry.getId());
+		return ids;
 	}
 
-	/**
-	 * Gets the value of a cell as a double. Note this cannot be used to differentiate between a cell that is not legal,
-	 * and a cell that has no value as both return <code>null</code>. Use {@link #hasCell(int,String)} if the difference
-	 * is important.
-	 * 
-	 * @param index Base-0 index of a row
-	 * @param columnName Name of a column
-	 * @return The value of the cell with the specified index and column name. <code>null</code> if index is out of
-	 * range or column doesn't exist or cell does not contain a number
-	 * @throws ServiceException
-	 * @throws IOException
-	 * @throws AuthenticationException
-	 */
-	public Double getCellAsDouble(int rowIndex, String columnName) throws IOException, ServiceException {
-		GoogleRow row = getRow(rowIndex);
-		return row == null ? null : row.getDoubleValue(columnName);
+	/** @return Snapshot of the rows on disk, <code>null</code> if snapshots are not kept */
+	@Nullable
+	private WorksheetSnapshot getSnapshot() {
+		File cacheDirectory = getHelper().getCacheDirectory();
+		if (cacheDirectory == null || worksheet.getId() == null) return null;
+		return WorksheetSnapshot.forWorksheet(cacheDirectory, worksheet.getId());
+	}
+
+	private void saveSnapshot(WorksheetSnapshot snapshot, String version, DateTime syncedAt, List<ListEntry> entries) {
+		try {
+			snapshot.write(version, syncedAt, entries);
+		}
+		catch (IOException e) {
+			// not fatal, the rows are just downloaded again next time
+			System.out.println("WARNING: Cannot save " + snapshot.getSnapshotFile() + ": " + e.getMessage());
+		}
 	}
 
 	/**
-	 * Gets the value of a cell as a date. Note this cannot be used to differentiate between a cell that is not legal,
-	 * and a cell that has no value as both return <code>null</code>. Use {@link #hasCell(int,String)} if the difference
-	 * is important.
-	 * 
-	 * @param index Base-0 index of a row
-	 * @param columnName Name of a column
-	 * @return The value of the cell with the specified index and column name. <code>null</code> if index is out of
-	 * range or column doesn't exist or cell does not contain a number
-	 * @throws ServiceException
+	 * Reads the rows a query asks for. Once the whole worksheet has been read (by {@link #getRows()}) the query is
+	 * answered from memory. Otherwise as much of the query as possible is sent to the spreadsheet service (see
+	 * {@link WorksheetQuery}), and only the rows and columns it selects are downloaded; they are not kept.
+	 *
+	 * @param query Rows to read
+	 * @return The rows the query's filter keeps, in the query's order
 	 * @throws IOException
-	 * @throws AuthenticationException
+	 * @throws ServiceException
 	 */
-	public Date getCellAsDate(int rowIndex, String columnName) throws IOException, ServiceException {
-		GoogleRow row = getRow(rowIndex);
-		return row == null ? null : row.getDateValue(columnName);
+	@Nonnull
+	public List<GoogleRow> getRows(@Nonnull WorksheetQuery query) throws IOException, ServiceException {
+		if (rows != null) return query.apply(rows, false);
+
+		ListFeed listFeed = getHelper().getService().getFeed(query.toListQuery(worksheet.getListFeedUrl()),
+				ListFeed.class);
+		List<GoogleRow> selectedRows = new ArrayList<>(listFeed.getEntries().size());
+		for (ListEntry entry : listFeed.getEntries())
+			selectedRows.add(new GoogleRow(this, entry));
+		return query.apply(selectedRows, query.isOrderPushedDown());
 	}
 
 }
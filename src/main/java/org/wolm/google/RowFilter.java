@@ -1,6 +1,7 @@
 package org.wolm.google;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -10,29 +11,68 @@ public abstract class RowFilter {
 
 	/**
 	 * Filters a list of rows by applying a filter to each row in the list on discarding any that the filter rejects.
-	 * 
+	 * The list is scanned once, and the scan stops as soon as the filter cannot accept any more rows.
+	 *
 	 * @param candidateRows A list of rows that are the candidates that need filtered
 	 * @param filter Filter to apply. <code>null</code> applies no filter, but still makes a copy of the input list.
 	 * @return A copy of the input list with rejected rows removed
 	 */
 	@Nonnull
 	public static List<GoogleRow> filter(@Nonnull List<GoogleRow> candidateRows, @Nullable RowFilter filter) {
-		List<GoogleRow> rows = new ArrayList<>(candidateRows.size());
-
-		if (filter != null) {
-			for (GoogleRow row : candidateRows)
-				if (filter.keepRow(row)) rows.add(row);
-		}
+		if (filter == null) return new ArrayList<>(candidateRows);
 
+		List<GoogleRow> rows = new ArrayList<>();
+		for (GoogleRow row : new RowFilterChain(filter).apply(candidateRows))
+			rows.add(row);
 		return rows;
 	}
 
 	/**
 	 * Determines whether a row should be kept in the list when filtering.
-	 * 
+	 *
 	 * @param row A row to evaluate
 	 * @return <code>true</code> if the row should be kept, <code>false</code> if it should be rejected
 	 */
 	public abstract boolean keepRow(GoogleRow row);
 
+	/**
+	 * Narrows down the rows of a worksheet using its {@link ColumnIndex column indexes}, without looking at each row.
+	 *
+	 * @param source Source whose rows are being filtered
+	 * @return The rows (by index in {@link RowSource#getRows()}) that the filter might keep: every row it keeps is
+	 * in the set, but the set may hold more. <code>null</code> if the filter cannot narrow the rows down.
+	 */
+	@Nullable
+	public BitSet selectCandidates(@Nonnull RowSource source) {
+		return null;
+	}
+
+	/**
+	 * Translates the filter into a condition of a structured query (the <code>sq</code> parameter of a list feed, see
+	 * {@link WorksheetQuery}), so the spreadsheet service leaves out the rows it rejects before they are downloaded.
+	 * The rows the condition selects must include every row the filter keeps, because the filter is still applied to
+	 * them.
+	 *
+	 * @return The condition, <code>null</code> if the filter cannot be translated
+	 */
+	@Nullable
+	public String toStructuredQuery() {
+		return null;
+	}
+
+	/**
+	 * Prepares the filter for a new pass over a list of rows. Filters that keep track of the rows they have seen (like
+	 * {@link RowFilter_MaxCount}) start over; other filters do nothing.
+	 */
+	public void reset() {
+		// most filters look at each row on its own
+	}
+
+	/**
+	 * @return <code>true</code> if the filter will reject every remaining row of the current pass, so the pass can stop
+	 */
+	public boolean isExhausted() {
+		return false;
+	}
+
 }
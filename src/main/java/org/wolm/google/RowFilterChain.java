@@ -0,0 +1,166 @@
+package org.wolm.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Several filters applied together, in one pass over the rows.
+ * <p>
+ * Each row is given to the filters in order, and the first filter that rejects it stops the evaluation, so later
+ * filters only see the rows that earlier ones kept (a {@link RowFilter_MaxCount} at the end counts the survivors). As
+ * soon as any filter is exhausted the rest of the rows are not looked at.
+ * <p>
+ * {@link #apply(Iterable)} filters lazily: rows are only read from the source as the result is iterated, so taking
+ * the first few matches of a long list only scans as far as needed.
+ *
+ * @author wolm
+ */
+public class RowFilterChain extends RowFilter {
+
+	@Nonnull
+	private final List<RowFilter> filters;
+
+	/**
+	 * @param filters Filters that must all keep a row for the chain to keep it, in the order they are evaluated
+	 */
+	public RowFilterChain(@Nonnull RowFilter... filters) {
+		this(Arrays.asList(filters));
+	}
+
+	/**
+	 * @param filters Filters that must all keep a row for the chain to keep it, in the order they are evaluated
+	 */
+	public RowFilterChain(@Nonnull List<RowFilter> filters) {
+		super();
+		this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+	}
+
+	/**
+	 * @param filter Filter to evaluate after the filters of this chain
+	 * @return A new chain with the filter added to the end
+	 */
+	@Nonnull
+	public RowFilterChain and(@Nonnull RowFilter filter) {
+		List<RowFilter> moreFilters = new ArrayList<>(filters);
+		moreFilters.add(filter);
+		return new RowFilterChain(moreFilters);
+	}
+
+	@Nonnull
+	public List<RowFilter> getFilters() {
+		return filters;
+	}
+
+	@Override
+	public boolean keepRow(GoogleRow row) {
+		for (RowFilter filter : filters)
+			if (!filter.keepRow(row)) return false;
+		return true;
+	}
+
+	/**
+	 * Intersects the candidates of the filters at the start of the chain that can narrow the rows down. Narrowing stops
+	 * at the first filter that cannot, since a later filter (like a count limit) may depend on seeing every row that
+	 * gets that far; so put filters on indexed columns first.
+	 */
+	@Override
+	@Nullable
+	public BitSet selectCandidates(@Nonnull RowSource source) {
+		BitSet candidates = null;
+		for (RowFilter filter : filters) {
+			BitSet filterCandidates = filter.selectCandidates(source);
+			if (filterCandidates == null) break;
+			if (candidates == null) candidates = filterCandidates;
+			else candidates.and(filterCandidates);
+		}
+		return candidates;
+	}
+
+	/**
+	 * Joins the conditions of the filters at the start of the chain that can be translated. Like
+	 * {@link #selectCandidates(RowSource)}, translation stops at the first filter that cannot be translated.
+	 */
+	@Override
+	@Nullable
+	public String toStructuredQuery() {
+		StringBuilder query = new StringBuilder();
+		for (RowFilter filter : filters) {
+			String condition = filter.toStructuredQuery();
+			if (condition == null) break;
+			if (query.length() > 0) query.append(" and ");
+			query.append(condition);
+		}
+		return query.length() == 0 ? null : query.toString();
+	}
+
+	@Override
+	public void reset() {
+		for (RowFilter filter : filters)
+			filter.reset();
+	}
+
+	@Override
+	public boolean isExhausted() {
+		for (RowFilter filter : filters)
+			if (filter.isExhausted()) return true;
+		return false;
+	}
+
+	/**
+	 * Filters rows lazily. Each iteration of the result is a new pass that {@link #reset() resets} the filters, so
+	 * iterate it only once at a time.
+	 *
+	 * @param candidateRows Rows to filter
+	 * @return The rows that every filter keeps, in their original order
+	 */
+	@Nonnull
+	public Iterable<GoogleRow> apply(@Nonnull final Iterable<GoogleRow> candidateRows) {
+		return new Iterable<GoogleRow>() {
+			@Override
+			public Iterator<GoogleRow> iterator() {
+				reset();
+				return new FilteringIterator(candidateRows.iterator());
+			}
+		};
+	}
+
+	private class FilteringIterator implements Iterator<GoogleRow> {
+		private final Iterator<GoogleRow> candidates;
+		private GoogleRow next = null;
+
+		public FilteringIterator(Iterator<GoogleRow> candidates) {
+			super();
+			this.candidates = candidates;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && !isExhausted() && candidates.hasNext()) {
+				GoogleRow candidate = candidates.next();
+				if (keepRow(candidate)) next = candidate;
+			}
+			return next != null;
+		}
+
+		@Override
+		public GoogleRow next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			GoogleRow row = next;
+			next = null;
+			return row;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
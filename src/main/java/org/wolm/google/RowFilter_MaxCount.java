@@ -1,5 +1,9 @@
 package org.wolm.google;
 
+/**
+ * Keeps the first rows of a pass, up to a maximum count. The count starts over with each pass ({@link #reset()}), so
+ * the filter can be reused; but it cannot be used by two passes at the same time.
+ */
 public class RowFilter_MaxCount extends RowFilter {
 
 	private final int maxRowCount;
@@ -15,4 +19,14 @@ public class RowFilter_MaxCount extends RowFilter {
 		return (currentRowIndex++) < maxRowCount;
 	}
 
+	@Override
+	public void reset() {
+		currentRowIndex = 0;
+	}
+
+	@Override
+	public boolean isExhausted() {
+		return currentRowIndex >= maxRowCount;
+	}
+
 }
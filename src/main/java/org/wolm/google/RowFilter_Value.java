@@ -1,6 +1,9 @@
 package org.wolm.google;
 
+import java.util.BitSet;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public class RowFilter_Value extends RowFilter {
 
@@ -20,4 +23,20 @@ public class RowFilter_Value extends RowFilter {
 		return targetValue.equals(row.getValue(columnName));
 	}
 
+	@Override
+	@Nullable
+	public BitSet selectCandidates(@Nonnull RowSource source) {
+		ColumnIndex index = source.getColumnIndex(columnName);
+		return index == null ? null : index.getRowsEqualTo(targetValue);
+	}
+
+	@Override
+	@Nullable
+	public String toStructuredQuery() {
+		// dates are compared after they are reformatted (see GoogleRow), which the service knows nothing about
+		if (columnName.indexOf("date") != -1) return null;
+		if (!WorksheetQuery.isQueryableColumn(columnName) || targetValue.indexOf('"') != -1) return null;
+		return columnName + " = \"" + targetValue + "\"";
+	}
+
 }
@@ -1,6 +1,9 @@
 package org.wolm.google;
 
+import java.util.BitSet;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public class RowFilter_ValueStartsWith extends RowFilter {
 
@@ -21,4 +24,11 @@ public class RowFilter_ValueStartsWith extends RowFilter {
 		if (value == null) return false;
 		return value.startsWith(targetPrefix);
 	}
+
+	@Override
+	@Nullable
+	public BitSet selectCandidates(@Nonnull RowSource source) {
+		ColumnIndex index = source.getColumnIndex(columnName);
+		return index == null ? null : index.getRowsStartingWith(targetPrefix);
+	}
 }
@@ -1,16 +1,18 @@
 package org.wolm.google;
 
-import java.text.SimpleDateFormat;
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
 import java.util.Date;
 
 public class RowFilter_Weekday extends RowFilter {
 
 	private final String columnName;
-	private final String weekdays[];
+	private final boolean[] keptDays = new boolean[Calendar.SATURDAY + 1];
+	private final Calendar calendar = Calendar.getInstance();
 
 	/**
 	 * Constructs a filter that only allows dates that fall on a certain day of the week
-	 * 
+	 *
 	 * @param columnName Name of the column that the date should be read from
 	 * @param weekdays Name(s) of the day(s) of the week to keep. These are the full day names like "Sunday" or
 	 * "Wednesday"
@@ -18,21 +20,34 @@ public class RowFilter_Weekday extends RowFilter {
 	public RowFilter_Weekday(String columnName, String... weekdays) {
 		super();
 		this.columnName = columnName;
-		this.weekdays = weekdays;
+
+		// look the names up once, rather than formatting the date of every row to compare names
+		String[] dayNames = DateFormatSymbols.getInstance().getWeekdays();
+		for (String weekday : weekdays)
+			for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++)
+				if (dayNames[day].equals(weekday)) keptDays[day] = true;
+	}
+
+	/**
+	 * Constructs a filter that only allows dates that fall on a certain day of the week
+	 *
+	 * @param columnName Name of the column that the date should be read from
+	 * @param daysOfWeek Day(s) of the week to keep, as {@link Calendar#DAY_OF_WEEK} values like {@link Calendar#SUNDAY}
+	 */
+	public RowFilter_Weekday(String columnName, int... daysOfWeek) {
+		super();
+		this.columnName = columnName;
+		for (int day : daysOfWeek)
+			keptDays[day] = true;
 	}
 
 	@Override
 	public boolean keepRow(GoogleRow row) {
-		SimpleDateFormat formatter = new SimpleDateFormat("EEEE");
-
 		Date date = row.getDateValue(columnName);
 		if (date == null) return false;
-		String rowDay = formatter.format(date);
-
-		for (String weekday : weekdays)
-			if (weekday.equals(rowDay)) return true;
 
-		return false;
+		calendar.setTime(date);
+		return keptDays[calendar.get(Calendar.DAY_OF_WEEK)];
 	}
 
 }
@@ -0,0 +1,492 @@
+package org.wolm.google;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.gdata.data.spreadsheet.CustomElementCollection;
+import com.google.gdata.data.spreadsheet.ListEntry;
+import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.XmlParser;
+
+/**
+ * A table of rows with named columns, like a worksheet of a Google spreadsheet or a spreadsheet exported to a file.
+ * <p>
+ * Subclasses only read the rows (see {@link #loadRows()}); looking rows up, filtering, ordering and indexing them is
+ * the same whatever they come from. Rows are read the first time they are needed and kept until {@link #refresh()}.
+ * Column names are those of a Google list feed: the header of the column in lower case, without spaces or punctuation
+ * (see {@link #toColumnName(String)}).
+ *
+ * @author wolm
+ */
+public abstract class RowSource {
+
+	// cached
+	List<GoogleRow> rows = null;
+	List<String> columnNames = null;
+	final Map<String, ColumnKeys> columnKeys = new HashMap<>();
+	final Map<String, ColumnIndex> columnIndexes = new HashMap<>();
+
+	/**
+	 * Turns the header of a column into its name, the way Google does for the list feed of a worksheet: lower case,
+	 * keeping only letters, digits, periods and dashes. "Audio Link" becomes "audiolink".
+	 *
+	 * @param header Header of a column
+	 * @return Name of the column, empty if the header has no letters or digits
+	 */
+	@Nonnull
+	public static String toColumnName(@Nonnull String header) {
+		StringBuilder name = new StringBuilder(header.length());
+		for (int i = 0; i < header.length(); i++) {
+			char c = header.charAt(i);
+			if (Character.isLetterOrDigit(c) || c == '.' || c == '-') name.append(Character.toLowerCase(c));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Names the columns of a table from the headers in its first row, like {@link #toColumnName(String)}. As Google
+	 * does, a name that is already taken gets a suffix: the second "Date" column is "date_2".
+	 *
+	 * @param headers Headers of the columns
+	 * @return Name of each column, <code>null</code> for columns whose header has no letters or digits
+	 */
+	@Nonnull
+	protected static String[] toColumnNames(@Nonnull String[] headers) {
+		String[] names = new String[headers.length];
+		Set<String> usedNames = new HashSet<>();
+		for (int i = 0; i < headers.length; i++) {
+			String name = headers[i] == null ? "" : toColumnName(headers[i]);
+			if (name.isEmpty()) continue;
+			String uniqueName = name;
+			for (int suffix = 2; !usedNames.add(uniqueName); suffix++)
+				uniqueName = name + "_" + suffix;
+			names[i] = uniqueName;
+		}
+		return names;
+	}
+
+	/**
+	 * @param values Values of the cells of a row
+	 * @return <code>true</code> if every cell is empty. Like the list feed of a worksheet, a table ends at its first
+	 * blank row.
+	 */
+	protected static boolean isBlankRow(@Nonnull String[] values) {
+		for (String value : values)
+			if (value != null && !value.trim().isEmpty()) return false;
+		return true;
+	}
+
+	/**
+	 * Makes a row out of the cells of a table, the way the list feed of a worksheet holds them.
+	 *
+	 * @param columnNames Names of the columns, from {@link #toColumnNames(String[])}
+	 * @param values Values of the cells, in column order. Missing or empty cells are empty in the row.
+	 * @return The row
+	 */
+	@Nonnull
+	protected GoogleRow createRow(@Nonnull String[] columnNames, @Nonnull String[] values) {
+		ListEntry entry = new ListEntry();
+		CustomElementCollection cells = entry.getCustomElements();
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i] == null) continue;
+			String value = i < values.length ? values[i] : null;
+			setCellValue(cells, columnNames[i], value == null || value.isEmpty() ? null : value);
+		}
+		return new GoogleRow(this, entry);
+	}
+
+	/**
+	 * Sets a cell the way reading the list feed does. Unlike {@link CustomElementCollection#setValueLocal(String,
+	 * String)}, which is meant for edits, an empty cell has a <code>null</code> value and a value may start with "=".
+	 *
+	 * @param cells Cells of a row
+	 * @param columnName Name of the column of the cell
+	 * @param value Value of the cell, <code>null</code> if it is empty
+	 */
+	static void setCellValue(@Nonnull CustomElementCollection cells, @Nonnull String columnName,
+			@Nullable String value) {
+		try {
+			XmlParser.ElementHandler handler = cells.getHandler(null, null, columnName, null);
+			handler.value = value;
+			handler.processEndElement();
+		}
+		catch (IOException | ParseException e) {
+			// the handler of a cell only stores the value
+			throw new IllegalStateException("Cannot set column '" + columnName + "'", e);
+		}
+	}
+
+	/** @return Title of the source, like the name of the worksheet */
+	public abstract String getTitle();
+
+	/**
+	 * Reads all the rows of the source.
+	 *
+	 * @return The rows, in source order
+	 * @throws IOException
+	 * @throws ServiceException
+	 */
+	@Nonnull
+	protected abstract List<GoogleRow> loadRows() throws IOException, ServiceException;
+
+	/**
+	 * @return The rows to look at once each, for a single pass over all of them. By default these are the
+	 * {@link #getRows() rows}, but a source can stream the rows it has not read yet instead.
+	 * @throws IOException
+	 * @throws ServiceException
+	 */
+	@Nonnull
+	protected Iterable<GoogleRow> scanRows() throws IOException, ServiceException {
+		return getRows();
+	}
+
+	/** Causes all caches to be dumped and new data is read from the source */
+	public void refresh() {
+		rows = null;
+		columnNames = null;
+		synchronized (columnKeys) {
+			columnKeys.clear();
+		}
+		synchronized (columnIndexes) {
+			columnIndexes.clear();
+		}
+	}
+
+	public List<String> getColumnNames() throws IOException, ServiceException {
+		// use a column name cache for consistency, since Google's data is in a set, which is unordered. this way the
+		// ordering is undefined, but consistent
+		if (columnNames == null) {
+			GoogleRow firstRow = getRow(0);
+			if (firstRow == null) return Collections.emptyList();
+			columnNames = new ArrayList<>(firstRow.getColumnNames());
+		}
+		return columnNames;
+	}
+
+	public boolean hasColumn(String columnName) {
+		try {
+			return getColumnNames().contains(columnName);
+		}
+		catch (Exception e) {
+			return false;
+		}
+	}
+
+	public boolean hasRow(int rowIndex) {
+		try {
+			getRow(rowIndex);
+			return true;
+		}
+		catch (IOException | ServiceException e) {
+			return false;
+		}
+	}
+
+	public boolean hasCell(int rowIndex, String columnName) {
+		try {
+			GoogleRow row = getRow(rowIndex);
+			return row == null ? false : row.hasColumn(columnName);
+		}
+		catch (IOException | ServiceException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return List of row data for the source, read the first time it is needed
+	 * @throws IOException
+	 * @throws ServiceException
+	 */
+	@Nonnull
+	public List<GoogleRow> getRows() throws IOException, ServiceException {
+		if (rows == null) rows = loadRows();
+		return rows;
+	}
+
+	/**
+	 * Filters the rows of the worksheet. Filters on {@link #indexColumns(String...) indexed} columns pick their rows
+	 * from the indexes, and only those rows are given to the filter.
+	 *
+	 * @param filter Filter to apply
+	 * @return The rows the filter keeps, in worksheet order
+	 * @throws IOException
+	 * @throws ServiceException
+	 */
+	@Nonnull
+	public List<GoogleRow> getRows(@Nonnull RowFilter filter) throws IOException, ServiceException {
+		List<GoogleRow> rows = getRows();
+		BitSet candidates = filter.selectCandidates(this);
+		if (candidates == null) return RowFilter.filter(rows, filter);
+
+		List<GoogleRow> keptRows = new ArrayList<>(candidates.cardinality());
+		filter.reset();
+		for (int i = candidates.nextSetBit(0); i >= 0 && i < rows.size() && !filter.isExhausted(); i = candidates
+				.nextSetBit(i + 1)) {
+			if (filter.keepRow(rows.get(i))) keptRows.add(rows.get(i));
+		}
+		return keptRows;
+	}
+
+	/**
+	 * Builds dictionary and bitmap {@link ColumnIndex indexes} of columns with few distinct values, so filters on their
+	 * values (see {@link RowFilter#selectCandidates(RowSource)}) do not need to look at every row. The indexes
+	 * are kept until {@link #refresh()}.
+	 *
+	 * @param columnNames Names of the columns to index
+	 * @throws IOException
+	 * @throws ServiceException
+	 */
+	public void indexColumns(@Nonnull String... columnNames) throws IOException, ServiceException {
+		List<GoogleRow> rows = getRows();
+		synchronized (columnIndexes) {
+			for (String columnName : columnNames) {
+				if (!columnIndexes.containsKey(columnName)) {
+					columnIndexes.put(columnName, ColumnIndex.build(rows, columnName));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param columnName Name of a column
+	 * @return Index of the column, <code>null</code> if it has not been {@link #indexColumns(String...) indexed}
+	 */
+	@Nullable
+	public ColumnIndex getColumnIndex(@Nonnull String columnName) {
+		synchronized (columnIndexes) {
+			return columnIndexes.get(columnName);
+		}
+	}
+
+	/** @return Approximate number of bytes of memory used by the column indexes */
+	public long getIndexMemoryFootprint() {
+		long bytes = 0;
+		synchronized (columnIndexes) {
+			for (ColumnIndex index : columnIndexes.values())
+				bytes += index.getMemoryFootprint();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param columnName Name of the column to order by
+	 * @return List of row data for the worksheet, ordered by the specified column. <code>null</code> if the requested
+	 * column cannot be found
+	 * @throws AuthenticationException
+	 * @throws IOException
+	 * @throws ServiceException
+	 * @throws URISyntaxException
+	 * @see #getRowsOrderedBy(String, boolean)
+	 */
+	@Nullable
+	public List<GoogleRow> getRowsOrderedBy(@Nonnull final String columnName) throws AuthenticationException,
+			IOException, ServiceException, URISyntaxException {
+		return getRowsOrderedBy(columnName, true);
+	}
+
+	/**
+	 * Rows are ordered by date if every cell of the column is a date, by number if every cell is a number, and as text
+	 * otherwise. Empty cells come after all values when ascending (before them when descending), and rows with equal
+	 * values stay in worksheet order.
+	 * <p>
+	 * The order is worked out once per column and direction and kept until {@link #refresh()}, so asking again costs
+	 * nothing. The rows of the worksheet themselves are left in their order.
+	 * 
+	 * @param columnName Name of the column to order by
+	 * @param <code>true</code> if the column should be ordered ascending, <code>false</code> if descending
+	 * @return Unmodifiable view of the row data for the worksheet, ordered by the specified column ordered as
+	 * requested. <code>null</code> if the requested column cannot be found
+	 * @throws AuthenticationException
+	 * @throws IOException
+	 * @throws ServiceException
+	 * @throws URISyntaxException
+	 */
+	@Nullable
+	public List<GoogleRow> getRowsOrderedBy(@Nonnull final String columnName, final boolean ascending)
+			throws AuthenticationException, IOException, ServiceException, URISyntaxException {
+		List<GoogleRow> rows = getRows();
+		if (rows.isEmpty()) return Collections.emptyList();
+		if (!rows.get(0).hasColumn(columnName)) return null;
+
+		return new OrderedRowList(rows, getColumnKeys(columnName).getOrder(ascending));
+	}
+
+	/**
+	 * @param columnName Name of a column
+	 * @return Typed values of the column, read from the rows the first time they are needed
+	 */
+	@Nonnull
+	ColumnKeys getColumnKeys(@Nonnull String columnName) throws IOException, ServiceException {
+		List<GoogleRow> rows = getRows();
+		synchronized (columnKeys) {
+			ColumnKeys keys = columnKeys.get(columnName);
+			if (keys == null || keys.size() != rows.size()) {
+				keys = ColumnKeys.extract(rows, columnName);
+				columnKeys.put(columnName, keys);
+			}
+			return keys;
+		}
+	}
+
+	/**
+	 * Selects the rows with the greatest values of a column, like the most recent rows by date, in a single pass that
+	 * does not sort the worksheet. Values are compared as text (see {@link TopRowSelector}), which orders the dates of
+	 * a worksheet correctly since they are written as yyyy-MM-dd. Rows that have not been read yet are
+	 * {@link #scanRows() scanned}, so a source that can stream them selects them as they arrive and only keeps the
+	 * selected rows.
+	 *
+	 * @param columnName Name of the column to order by
+	 * @param filter Filter the rows must pass, <code>null</code> for all rows. It should judge each row on its own: a
+	 * count limit does not belong here, that is what <code>count</code> is for.
+	 * @param count Maximum number of rows to return
+	 * @return The selected rows, ordered ascending by the column. <code>null</code> if the requested column cannot be
+	 * found
+	 * @throws IOException
+	 * @throws ServiceException
+	 */
+	@Nullable
+	public List<GoogleRow> getTopRowsOrderedBy(@Nonnull String columnName, @Nullable RowFilter filter, int count)
+			throws IOException, ServiceException {
+		TopRowSelector selector = new TopRowSelector(columnName, count);
+		if (filter != null) filter.reset();
+		boolean firstRow = true;
+		try {
+			for (GoogleRow row : scanRows()) {
+				if (firstRow && !row.hasColumn(columnName)) return null;
+				firstRow = false;
+				if (filter == null || filter.keepRow(row)) selector.offer(row);
+			}
+		}
+		catch (RowStream.PageException e) {
+			// a streamed page that could not be downloaded fails like any other read of the rows
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			if (e.getCause() instanceof ServiceException) throw (ServiceException) e.getCause();
+			throw new IOException(e.getMessage(), e.getCause());
+		}
+		return selector.getRows();
+	}
+
+	/**
+	 * @param index Base-0 index of a row
+	 * @return The row with the specified index. <code>null</code> if index is out of range
+	 * @throws ServiceException
+	 * @throws IOException
+	 * @throws AuthenticationException
+	 */
+	public GoogleRow getRow(int index) throws IOException, ServiceException {
+		if (index < 0) return null;
+		List<GoogleRow> rows = getRows();
+		return index >= rows.size() ? null : rows.get(index);
+	}
+
+	/**
+	 * Gets the value of a cell. Note this cannot be used to differentiate between a cell that is not legal, and a cell
+	 * that has no value as both return <code>null</code>. Use {@link #hasCell(int,String)} if the difference is
+	 * important
+	 * 
+	 * @param index Base-0 index of a row
+	 * @param columnName Name of a column
+	 * @return The value of the cell with the specified index and column name. <code>null</code> if index is out of
+	 * range or column doesn't exist
+	 * @throws ServiceException
+	 * @throws IOException
+	 * @throws AuthenticationException
+	 */
+	public String getCell(int rowIndex, String columnName) throws IOException, ServiceException {
+		GoogleRow row = getRow(rowIndex);
+		return row == null ? null : row.getValue(columnName);
+	}
+
+	/**
+	 * Gets the value of a cell as a long. Note this cannot be used to differentiate between a cell that is not legal,
+	 * and a cell that has no value as both return <code>null</code>. Use {@link #hasCell(int,String)} if the difference
+	 * is important.
+	 * 
+	 * @param index Base-0 index of a row
+	 * @param columnName Name of a column
+	 * @return The value of the cell with the specified index and column name. <code>null</code> if index is out of
+	 * range or column doesn't exist or cell does not contain a number
+	 * @throws ServiceException
+	 * @throws IOException
+	 * @throws AuthenticationException
+	 */
+	public Long getCellAsLong(int rowIndex, String columnName) throws IOException, ServiceException {
+		GoogleRow row = getRow(rowIndex);
+		return row == null ? null : row.getLongValue(columnName);
+	}
+
+	/**
+	 * Gets the value of a cell as a double. Note this cannot be used to differentiate between a cell that is not legal,
+	 * and a cell that has no value as both return <code>null</code>. Use {@link #hasCell(int,String)} if the difference
+	 * is important.
+	 * 
+	 * @param index Base-0 index of a row
+	 * @param columnName Name of a column
+	 * @return The value of the cell with the specified index and column name. <code>null</code> if index is out of
+	 * range or column doesn't exist or cell does not contain a number
+	 * @throws ServiceException
+	 * @throws IOException
+	 * @throws AuthenticationException
+	 */
+	public Double getCellAsDouble(int rowIndex, String columnName) throws IOException, ServiceException {
+		GoogleRow row = getRow(rowIndex);
+		return row == null ? null : row.getDoubleValue(columnName);
+	}
+
+	/**
+	 * Gets the value of a cell as a date. Note this cannot be used to differentiate between a cell that is not legal,
+	 * and a cell that has no value as both return <code>null</code>. Use {@link #hasCell(int,String)} if the difference
+	 * is important.
+	 * 
+	 * @param index Base-0 index of a row
+	 * @param columnName Name of a column
+	 * @return The value of the cell with the specified index and column name. <code>null</code> if index is out of
+	 * range or column doesn't exist or cell does not contain a number
+	 * @throws ServiceException
+	 * @throws IOException
+	 * @throws AuthenticationException
+	 */
+	public Date getCellAsDate(int rowIndex, String columnName) throws IOException, ServiceException {
+		GoogleRow row = getRow(rowIndex);
+		return row == null ? null : row.getDateValue(columnName);
+	}
+
+	/** Rows seen through an ordering of their indexes, without copying or reordering them */
+	private static class OrderedRowList extends AbstractList<GoogleRow> implements RandomAccess {
+		private final List<GoogleRow> rows;
+		private final int[] order;
+
+		OrderedRowList(List<GoogleRow> rows, int[] order) {
+			super();
+			this.rows = rows;
+			this.order = order;
+		}
+
+		@Override
+		public GoogleRow get(int index) {
+			return rows.get(order[index]);
+		}
+
+		@Override
+		public int size() {
+			return order.length;
+		}
+	}
+
+}
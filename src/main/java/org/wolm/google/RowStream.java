@@ -0,0 +1,152 @@
+package org.wolm.google;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nonnull;
+
+import com.google.gdata.data.spreadsheet.ListEntry;
+import com.google.gdata.util.ServiceException;
+
+/**
+ * Rows of a worksheet read a page at a time, so that the rows can be looked at while the rest are still being
+ * downloaded, and only a couple of pages are in memory at once however long the worksheet is.
+ * <p>
+ * While the rows of one page are iterated the next page is downloaded in the background. A page shorter than the page
+ * size is the last one. Each iteration starts again from the first page, and iteration can be abandoned at any time
+ * (for example by a {@link RowFilterChain} that has found all the rows it wants); at most one page is then downloaded
+ * for nothing.
+ *
+ * @author wolm
+ */
+public class RowStream implements Iterable<GoogleRow> {
+	/** Number of rows read at a time unless told otherwise */
+	public static final int DEFAULT_PAGE_SIZE = 200;
+
+	private static final ExecutorService PREFETCHER = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "RowStream prefetch");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/** Downloads pages of rows */
+	public interface PageSource {
+		/**
+		 * @param startIndex Base-1 index of the first row of the page
+		 * @param maxResults Number of rows in a full page
+		 * @return Rows of the page, fewer than <code>maxResults</code> if it is the last page
+		 * @throws IOException
+		 * @throws ServiceException
+		 */
+		@Nonnull
+		List<ListEntry> getPage(int startIndex, int maxResults) throws IOException, ServiceException;
+	}
+
+	/** Thrown while iterating when a page of rows cannot be downloaded */
+	public static class PageException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public PageException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+
+	private final GoogleWorksheet worksheet;
+	@Nonnull
+	private final PageSource source;
+	private final int pageSize;
+
+	/**
+	 * @param worksheet Worksheet the rows belong to
+	 * @param source Where the pages come from
+	 * @param pageSize Number of rows to read at a time
+	 */
+	public RowStream(GoogleWorksheet worksheet, @Nonnull PageSource source, int pageSize) {
+		super();
+		if (pageSize < 1) throw new IllegalArgumentException("Page size must be positive, not " + pageSize);
+		this.worksheet = worksheet;
+		this.source = source;
+		this.pageSize = pageSize;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	@Override
+	public Iterator<GoogleRow> iterator() {
+		return new PageIterator();
+	}
+
+	private class PageIterator implements Iterator<GoogleRow> {
+		private List<ListEntry> page = Collections.emptyList();
+		private int indexInPage = 0;
+		/** base-1 index of the first row of the next page */
+		private int nextStartIndex = 1;
+		/** download of the next page, <code>null</code> after the last page */
+		private Future<List<ListEntry>> nextPage;
+
+		public PageIterator() {
+			super();
+			nextPage = prefetch();
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (indexInPage >= page.size()) {
+				if (nextPage == null) return false;
+				page = waitFor(nextPage);
+				indexInPage = 0;
+				nextPage = page.size() < pageSize ? null : prefetch();
+			}
+			return true;
+		}
+
+		@Override
+		public GoogleRow next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			return new GoogleRow(worksheet, page.get(indexInPage++));
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private Future<List<ListEntry>> prefetch() {
+			final int startIndex = nextStartIndex;
+			nextStartIndex += pageSize;
+			return PREFETCHER.submit(new Callable<List<ListEntry>>() {
+				@Override
+				public List<ListEntry> call() throws Exception {
+					return source.getPage(startIndex, pageSize);
+				}
+			});
+		}
+
+		private List<ListEntry> waitFor(Future<List<ListEntry>> download) {
+			try {
+				return download.get();
+			}
+			catch (ExecutionException e) {
+				throw new PageException("Cannot read rows: " + e.getCause().getMessage(), e.getCause());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new PageException("Interrupted while reading rows", e);
+			}
+		}
+	}
+}
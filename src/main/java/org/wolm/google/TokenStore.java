@@ -0,0 +1,173 @@
+package org.wolm.google;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialRefreshListener;
+import com.google.api.client.auth.oauth2.TokenErrorResponse;
+import com.google.api.client.auth.oauth2.TokenResponse;
+
+/**
+ * Remembers the OAuth2 access token of the service account between runs, so that a run does not have to exchange the
+ * P12 key for a new token before it can read a spreadsheet while the last token is still good.
+ * <p>
+ * The token is kept in a properties file (by default ~/.wolm/google-token.properties) that only the owner can read,
+ * with its expiry time and the service account it belongs to. The store listens to the credential, so every new token
+ * is saved as soon as it is received.
+ *
+ * @author wolm
+ */
+public class TokenStore implements CredentialRefreshListener {
+	/** tokens that expire sooner than this are not worth reusing */
+	public static final long MINIMUM_LIFETIME_MILLIS = 5 * 60 * 1000;
+
+	private static final String SERVICE_ACCOUNT_ID = "serviceAccountId";
+	private static final String ACCESS_TOKEN = "accessToken";
+	private static final String EXPIRATION_TIME = "expirationTimeMillis";
+
+	@Nonnull
+	private final File tokenFile;
+	@Nonnull
+	private final String serviceAccountId;
+
+	/**
+	 * Creates a store in the default location, ~/.wolm/google-token.properties
+	 *
+	 * @param serviceAccountId Service account the tokens belong to
+	 */
+	public TokenStore(@Nonnull String serviceAccountId) {
+		this(new File(System.getenv("HOME") + "/.wolm/google-token.properties"), serviceAccountId);
+	}
+
+	public TokenStore(@Nonnull File tokenFile, @Nonnull String serviceAccountId) {
+		super();
+		this.tokenFile = tokenFile;
+		this.serviceAccountId = serviceAccountId;
+	}
+
+	@Nonnull
+	public File getTokenFile() {
+		return tokenFile;
+	}
+
+	/**
+	 * Gives a credential the saved token, if there is one that is good for at least
+	 * {@link #MINIMUM_LIFETIME_MILLIS}. Without it the credential gets a new token the first time it is used.
+	 *
+	 * @param credential Credential of the service account
+	 * @return <code>true</code> if a saved token was given to the credential
+	 */
+	public boolean restore(@Nonnull Credential credential) {
+		Properties properties = load();
+		if (properties == null || !serviceAccountId.equals(properties.getProperty(SERVICE_ACCOUNT_ID))) return false;
+
+		String accessToken = properties.getProperty(ACCESS_TOKEN);
+		long expirationTime;
+		try {
+			expirationTime = Long.parseLong(properties.getProperty(EXPIRATION_TIME));
+		}
+		catch (NumberFormatException e) {
+			return false;
+		}
+		if (accessToken == null || expirationTime - System.currentTimeMillis() < MINIMUM_LIFETIME_MILLIS) return false;
+
+		credential.setAccessToken(accessToken);
+		credential.setExpirationTimeMilliseconds(expirationTime);
+		return true;
+	}
+
+	/**
+	 * Saves the token of a credential. The file is replaced atomically and is only readable by its owner.
+	 *
+	 * @param credential Credential that holds a token
+	 * @throws IOException
+	 */
+	public void save(@Nonnull Credential credential) throws IOException {
+		if (credential.getAccessToken() == null || credential.getExpirationTimeMilliseconds() == null) return;
+
+		File directory = tokenFile.getAbsoluteFile().getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+
+		Properties properties = new Properties();
+		properties.setProperty(SERVICE_ACCOUNT_ID, serviceAccountId);
+		properties.setProperty(ACCESS_TOKEN, credential.getAccessToken());
+		properties.setProperty(EXPIRATION_TIME, credential.getExpirationTimeMilliseconds().toString());
+
+		Path tempFile = createPrivateFile(directory);
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+				properties.store(writer, "OAuth2 access token of the Google service account");
+			}
+			Files.move(tempFile, tokenFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/** Forgets the saved token */
+	public void clear() {
+		tokenFile.delete();
+	}
+
+	@Override
+	public void onTokenResponse(Credential credential, TokenResponse tokenResponse) {
+		// the credential does not catch what its listeners throw, and the token is good whether it is saved or not
+		try {
+			save(credential);
+		}
+		catch (IOException e) {
+			System.out.println("WARNING: Cannot save " + tokenFile + ": " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void onTokenErrorResponse(Credential credential, TokenErrorResponse tokenErrorResponse) throws IOException {
+		// the saved token is no better than the one that was just refused
+		clear();
+	}
+
+	@Nullable
+	private Properties load() {
+		if (!tokenFile.isFile()) return null;
+
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(tokenFile.toPath(), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+			return properties;
+		}
+		catch (IOException e) {
+			// ignore, a new token is just requested
+			return null;
+		}
+	}
+
+	/** @return A new file that only the owner can read and write, where the file system supports it */
+	private Path createPrivateFile(File directory) throws IOException {
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			return Files.createTempFile(directory.toPath(), tokenFile.getName(), ".tmp",
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+
+		File file = File.createTempFile(tokenFile.getName(), ".tmp", directory);
+		file.setReadable(false, false);
+		file.setWritable(false, false);
+		file.setReadable(true, true);
+		file.setWritable(true, true);
+		return file.toPath();
+	}
+}
@@ -0,0 +1,96 @@
+package org.wolm.google;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * Keeps the rows with the greatest values of a column out of all the rows offered to it, like the most recent messages
+ * by date, without sorting all of them.
+ * <p>
+ * The best rows so far are kept in a heap of at most <code>count</code> rows, so choosing from <i>n</i> rows takes
+ * O(<i>n</i> log <i>count</i>) time and O(<i>count</i>) space. Values are compared as text, with empty cells greater
+ * than any value, and rows with the same value are chosen the way a stable sort would choose them: earlier rows first.
+ * The result is therefore the same as sorting the rows descending, taking the first <code>count</code> and reversing
+ * them.
+ *
+ * @author wolm
+ */
+public class TopRowSelector {
+
+	/** Orders candidates from worst to best, which is also the order the selected rows are returned in */
+	private static final Comparator<Candidate> WORST_FIRST = new Comparator<Candidate>() {
+		@Override
+		public int compare(Candidate candidate1, Candidate candidate2) {
+			int comparison = ObjectUtils.compare(candidate1.value, candidate2.value, true);
+			if (comparison != 0) return comparison;
+			return candidate1.index > candidate2.index ? -1 : candidate1.index < candidate2.index ? 1 : 0;
+		}
+	};
+
+	@Nonnull
+	private final String columnName;
+	private final int count;
+	@Nonnull
+	private final PriorityQueue<Candidate> heap;
+	private int offeredCount = 0;
+
+	/**
+	 * @param columnName Name of the column to order by
+	 * @param count Maximum number of rows to select
+	 */
+	public TopRowSelector(@Nonnull String columnName, int count) {
+		super();
+		this.columnName = columnName;
+		this.count = Math.max(count, 0);
+		this.heap = new PriorityQueue<>(Math.max(this.count, 1), WORST_FIRST);
+	}
+
+	/**
+	 * @param row Next row to choose from
+	 * @return <code>true</code> if the row is among the best so far
+	 */
+	public boolean offer(@Nonnull GoogleRow row) {
+		Candidate candidate = new Candidate(row, row.getValue(columnName), offeredCount++);
+		if (heap.size() < count) return heap.add(candidate);
+		if (count == 0 || WORST_FIRST.compare(candidate, heap.peek()) <= 0) return false;
+		heap.poll();
+		return heap.add(candidate);
+	}
+
+	/**
+	 * @return The selected rows, ascending (so the best row is last)
+	 */
+	@Nonnull
+	public List<GoogleRow> getRows() {
+		List<Candidate> candidates = new ArrayList<>(heap);
+		Collections.sort(candidates, WORST_FIRST);
+		List<GoogleRow> rows = new ArrayList<>(candidates.size());
+		for (Candidate candidate : candidates)
+			rows.add(candidate.row);
+		return rows;
+	}
+
+	/** @return Number of rows selected so far */
+	public int size() {
+		return heap.size();
+	}
+
+	private static class Candidate {
+		final GoogleRow row;
+		final String value;
+		final int index;
+
+		Candidate(GoogleRow row, String value, int index) {
+			this.row = row;
+			this.value = value;
+			this.index = index;
+		}
+	}
+}
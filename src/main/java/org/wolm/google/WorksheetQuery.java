@@ -0,0 +1,172 @@
+package org.wolm.google;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.gdata.client.spreadsheet.ListQuery;
+
+/**
+ * Rows wanted from a worksheet: the ones a filter keeps, ordered by a column, with only some of their columns.
+ * <p>
+ * As much of it as possible is left to the spreadsheet service, so that fewer rows and columns are downloaded and
+ * parsed. Filters that can be {@link RowFilter#toStructuredQuery() translated} become the structured query of the list
+ * feed, the order becomes its <code>orderby</code> and <code>reverse</code> parameters, and the columns become a
+ * partial response. The filter is still applied to the rows that come back, so filters that cannot be translated
+ * (like {@link RowFilter_ValueStartsWith} or {@link RowFilter_MaxCount}) work as they always do.
+ *
+ * @author wolm
+ * @see GoogleWorksheet#getRows(WorksheetQuery)
+ */
+public class WorksheetQuery {
+	private static final Pattern QUERYABLE_COLUMN = Pattern.compile("[A-Za-z0-9._-]+");
+
+	@Nullable
+	private final RowFilter filter;
+	@Nullable
+	private String orderByColumn = null;
+	private boolean ascending = true;
+	@Nonnull
+	private final Set<String> columnNames = new LinkedHashSet<>();
+
+	/**
+	 * @param filter Filter the rows must pass, <code>null</code> for all rows
+	 */
+	public WorksheetQuery(@Nullable RowFilter filter) {
+		super();
+		this.filter = filter;
+	}
+
+	/**
+	 * @param columnName Name of a column
+	 * @return <code>true</code> if the column can be named in the parameters of a list feed query
+	 */
+	static boolean isQueryableColumn(@Nonnull String columnName) {
+		return QUERYABLE_COLUMN.matcher(columnName).matches();
+	}
+
+	/**
+	 * Orders the rows by a column, the way {@link GoogleWorksheet#getRowsOrderedBy(String, boolean)} does when the
+	 * service cannot order them.
+	 *
+	 * @param columnName Name of the column to order by
+	 * @param ascending <code>true</code> for ascending, <code>false</code> for descending
+	 * @return This query, for chaining
+	 */
+	@Nonnull
+	public WorksheetQuery orderBy(@Nonnull String columnName, boolean ascending) {
+		this.orderByColumn = columnName;
+		this.ascending = ascending;
+		return this;
+	}
+
+	/**
+	 * Limits the columns downloaded. This must include every column the filter looks at; the column the rows are
+	 * ordered by is added automatically. Rows read before from the whole worksheet keep all their columns.
+	 *
+	 * @param columnNames Names of the columns needed
+	 * @return This query, for chaining
+	 */
+	@Nonnull
+	public WorksheetQuery select(@Nonnull String... columnNames) {
+		Collections.addAll(this.columnNames, columnNames);
+		return this;
+	}
+
+	@Nullable
+	public RowFilter getFilter() {
+		return filter;
+	}
+
+	@Nullable
+	public String getOrderByColumn() {
+		return orderByColumn;
+	}
+
+	public boolean isAscending() {
+		return ascending;
+	}
+
+	/** @return Names of the columns needed, empty for all columns */
+	@Nonnull
+	public Set<String> getColumnNames() {
+		return Collections.unmodifiableSet(columnNames);
+	}
+
+	/** @return The part of the filter the service can evaluate, <code>null</code> if none */
+	@Nullable
+	public String getStructuredQuery() {
+		return filter == null ? null : filter.toStructuredQuery();
+	}
+
+	/** @return <code>true</code> if the service can order the rows */
+	public boolean isOrderPushedDown() {
+		return orderByColumn != null && isQueryableColumn(orderByColumn);
+	}
+
+	/**
+	 * @return The partial response holding only the needed columns of each row, <code>null</code> for all columns
+	 */
+	@Nullable
+	public String getFields() {
+		if (columnNames.isEmpty()) return null;
+
+		Set<String> fields = new LinkedHashSet<>(columnNames);
+		if (orderByColumn != null) fields.add(orderByColumn);
+		StringBuilder fieldList = new StringBuilder("entry(id");
+		for (String columnName : fields) {
+			if (!isQueryableColumn(columnName)) return null;
+			fieldList.append(",gsx:").append(columnName);
+		}
+		return fieldList.append(")").toString();
+	}
+
+	/**
+	 * @param listFeedUrl List feed of a worksheet
+	 * @return Query of the list feed doing what the service can of this query
+	 */
+	@Nonnull
+	public ListQuery toListQuery(@Nonnull URL listFeedUrl) {
+		ListQuery query = new ListQuery(listFeedUrl);
+		String structuredQuery = getStructuredQuery();
+		if (structuredQuery != null) query.setSpreadsheetQuery(structuredQuery);
+		if (isOrderPushedDown()) {
+			query.setOrderBy("column:" + orderByColumn);
+			query.setReverse(!ascending);
+		}
+		String fields = getFields();
+		if (fields != null) query.setFields(fields);
+		return query;
+	}
+
+	/**
+	 * Does on the client what the service has not done.
+	 *
+	 * @param rows Rows of the worksheet, or the rows the service selected
+	 * @param ordered <code>true</code> if the rows are already in the order of this query
+	 * @return The rows the filter keeps, in the order of this query
+	 */
+	@Nonnull
+	List<GoogleRow> apply(@Nonnull List<GoogleRow> rows, boolean ordered) {
+		if (!ordered && orderByColumn != null && !rows.isEmpty()) {
+			List<GoogleRow> orderedRows = new ArrayList<>(rows.size());
+			for (int index : ColumnKeys.extract(rows, orderByColumn).getOrder(ascending))
+				orderedRows.add(rows.get(index));
+			rows = orderedRows;
+		}
+		return RowFilter.filter(rows, filter);
+	}
+
+	@Override
+	public String toString() {
+		return "sq=" + getStructuredQuery() + (isOrderPushedDown() ? ", orderby=column:" + orderByColumn : "")
+				+ (isOrderPushedDown() && !ascending ? ", reverse=true" : "") + ", fields=" + getFields();
+	}
+}
@@ -0,0 +1,262 @@
+package org.wolm.google;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.spreadsheet.CustomElementCollection;
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+/**
+ * Copy of the rows of a worksheet on disk, so that a worksheet nobody has edited since the last run does not have to be
+ * downloaded again.
+ * <p>
+ * The snapshot is stamped with the version of the worksheet it was taken from (its ETag and updated time, see
+ * {@link GoogleWorksheet#getVersion()}), and can be used as is for the same version. It is also stamped with the
+ * server's time of the download, so that a changed worksheet can be brought up to date by downloading only the rows
+ * edited since then (see {@link Contents#merge(List, List)}).
+ * <p>
+ * The file is binary: a header with the version, the download time and the column names, then each row as its entry
+ * ID and its cells, each cell a column number and a length-prefixed UTF-8 value. It is read through a memory mapping,
+ * without copying the file into a buffer first.
+ *
+ * @author wolm
+ */
+public class WorksheetSnapshot {
+	private static final int MAGIC = 0x574f4c4d; // "WOLM"
+	private static final int FORMAT_VERSION = 2;
+	private static final int NO_VALUE = -1;
+
+	@Nonnull
+	private final File snapshotFile;
+
+	public WorksheetSnapshot(@Nonnull File snapshotFile) {
+		super();
+		this.snapshotFile = snapshotFile;
+	}
+
+	/**
+	 * @param cacheDirectory Directory holding the snapshots
+	 * @param worksheetId ID of the worksheet (its URL)
+	 * @return The snapshot of the worksheet in the directory
+	 */
+	@Nonnull
+	public static WorksheetSnapshot forWorksheet(@Nonnull File cacheDirectory, @Nonnull String worksheetId) {
+		String fileName = worksheetId.replaceFirst("^[a-z]+://", "").replaceAll("[^A-Za-z0-9._-]+", "_");
+		return new WorksheetSnapshot(new File(cacheDirectory, "worksheets/" + fileName + ".rows"));
+	}
+
+	@Nonnull
+	public File getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	/**
+	 * Reads the rows of the snapshot, if it was taken from the requested version of the worksheet. A missing, stale or
+	 * unreadable snapshot is not an error, the worksheet just has to be downloaded.
+	 *
+	 * @param version Version of the worksheet as it is now
+	 * @return The rows of the worksheet, <code>null</code> if the snapshot cannot be used
+	 */
+	@Nullable
+	public List<ListEntry> read(@Nonnull String version) {
+		Contents contents = read();
+		return contents == null || !version.equals(contents.getVersion()) ? null : contents.getEntries();
+	}
+
+	/**
+	 * Reads the snapshot, whatever version of the worksheet it was taken from.
+	 *
+	 * @return The snapshot, <code>null</code> if it is missing or unreadable
+	 */
+	@Nullable
+	public Contents read() {
+		if (!snapshotFile.isFile()) return null;
+
+		try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) return null;
+			String version = readString(buffer);
+			String syncedAt = readString(buffer);
+
+			String[] columnNames = new String[buffer.getInt()];
+			for (int i = 0; i < columnNames.length; i++)
+				columnNames[i] = readString(buffer);
+
+			int rowCount = buffer.getInt();
+			List<ListEntry> entries = new ArrayList<>(rowCount);
+			for (int row = 0; row < rowCount; row++) {
+				ListEntry entry = new ListEntry();
+				entry.setId(readString(buffer));
+				CustomElementCollection cells = entry.getCustomElements();
+				int cellCount = buffer.getInt();
+				for (int cell = 0; cell < cellCount; cell++) {
+					RowSource.setCellValue(cells, columnNames[buffer.getInt()], readString(buffer));
+				}
+				entries.add(entry);
+			}
+			return new Contents(version, syncedAt == null ? null : DateTime.parseDateTime(syncedAt), entries);
+		}
+		catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			// a broken snapshot is the same as none, the worksheet gets downloaded and the snapshot rewritten
+			return null;
+		}
+	}
+
+	/**
+	 * Replaces the snapshot with the rows of a worksheet. The file is replaced atomically, so a crash never leaves a
+	 * half-written snapshot.
+	 *
+	 * @param version Version of the worksheet the rows were read from
+	 * @param syncedAt Time (on the server) the rows were read, <code>null</code> if not known
+	 * @param entries Rows of the worksheet
+	 * @throws IOException
+	 */
+	public void write(@Nonnull String version, @Nullable DateTime syncedAt, @Nonnull List<ListEntry> entries)
+			throws IOException {
+		File directory = snapshotFile.getAbsoluteFile().getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+
+		// number the columns in the order they are first seen
+		Map<String, Integer> columnNumbers = new LinkedHashMap<>();
+		for (ListEntry entry : entries) {
+			for (String columnName : entry.getCustomElements().getTags()) {
+				if (!columnNumbers.containsKey(columnName)) columnNumbers.put(columnName, columnNumbers.size());
+			}
+		}
+
+		File tempFile = File.createTempFile(snapshotFile.getName(), ".tmp", directory);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				writeString(out, version);
+				writeString(out, syncedAt == null ? null : syncedAt.toString());
+
+				out.writeInt(columnNumbers.size());
+				for (String columnName : columnNumbers.keySet())
+					writeString(out, columnName);
+
+				out.writeInt(entries.size());
+				for (ListEntry entry : entries) {
+					writeString(out, entry.getId());
+					CustomElementCollection cells = entry.getCustomElements();
+					out.writeInt(cells.getTags().size());
+					for (String columnName : cells.getTags()) {
+						out.writeInt(columnNumbers.get(columnName));
+						writeString(out, cells.getValue(columnName));
+					}
+				}
+			}
+			Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			tempFile.delete();
+		}
+	}
+
+	/** Removes the snapshot, so the next read of the worksheet downloads it */
+	public void delete() {
+		snapshotFile.delete();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(NO_VALUE);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length == NO_VALUE) return null;
+		if (length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("Bad length " + length);
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** What a snapshot holds */
+	public static class Contents {
+		@Nonnull
+		private final String version;
+		@Nullable
+		private final DateTime syncedAt;
+		@Nonnull
+		private final List<ListEntry> entries;
+
+		public Contents(@Nonnull String version, @Nullable DateTime syncedAt, @Nonnull List<ListEntry> entries) {
+			super();
+			this.version = version;
+			this.syncedAt = syncedAt;
+			this.entries = entries;
+		}
+
+		/** @return Version of the worksheet the rows were read from */
+		@Nonnull
+		public String getVersion() {
+			return version;
+		}
+
+		/** @return Time (on the server) the rows were read, <code>null</code> if not known */
+		@Nullable
+		public DateTime getSyncedAt() {
+			return syncedAt;
+		}
+
+		@Nonnull
+		public List<ListEntry> getEntries() {
+			return entries;
+		}
+
+		/**
+		 * Brings the rows up to date with the rows changed since they were read.
+		 *
+		 * @param changedEntries Rows inserted or edited since {@link #getSyncedAt()}, with all their cells
+		 * @param currentIds IDs of all rows of the worksheet as it is now, in worksheet order
+		 * @return The rows of the worksheet as it is now: the changed rows, and the unchanged rows of the snapshot, in
+		 * the order of <code>currentIds</code>. Rows that are no longer in the worksheet are left out.
+		 * <code>null</code> if a row is neither changed nor in the snapshot, so the snapshot cannot be brought up to
+		 * date and the worksheet has to be downloaded.
+		 */
+		@Nullable
+		public List<ListEntry> merge(@Nonnull List<ListEntry> changedEntries, @Nonnull List<String> currentIds) {
+			Map<String, ListEntry> entriesById = new HashMap<>(entries.size() + changedEntries.size());
+			for (ListEntry entry : entries)
+				entriesById.put(entry.getId(), entry);
+			for (ListEntry entry : changedEntries)
+				entriesById.put(entry.getId(), entry);
+
+			List<ListEntry> merged = new ArrayList<>(currentIds.size());
+			for (String id : currentIds) {
+				ListEntry entry = id == null ? null : entriesById.get(id);
+				if (entry == null) return null;
+				merged.add(entry);
+			}
+			return merged;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.wolm.local;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the records of UTF-8 comma-separated values (RFC 4180) one at a time, straight from a buffer like a
+ * memory-mapped file.
+ * <p>
+ * Fields may be quoted, and quoted fields may hold delimiters, line breaks and doubled quotes. Lines may end with
+ * CR LF, LF or CR. The delimiter and quote are ASCII, so the bytes are split before any of them is decoded, and only
+ * the fields themselves become strings.
+ *
+ * @author wolm
+ */
+public class CsvParser {
+	private static final byte QUOTE = '"';
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+
+	@Nonnull
+	private final ByteBuffer buffer;
+	private final byte delimiter;
+	/** bytes of the field being read */
+	private byte[] field = new byte[256];
+	private int fieldLength = 0;
+
+	/**
+	 * @param buffer Bytes to read, from the buffer's position to its limit
+	 * @param delimiter Character between the fields, like <code>','</code> or <code>'\t'</code>
+	 */
+	public CsvParser(@Nonnull ByteBuffer buffer, char delimiter) {
+		super();
+		if (delimiter > 0x7f || delimiter == QUOTE || delimiter == CR || delimiter == LF) {
+			throw new IllegalArgumentException("Cannot separate fields with '" + delimiter + "'");
+		}
+		this.buffer = buffer;
+		this.delimiter = (byte) delimiter;
+
+		// skip a byte order mark
+		int start = buffer.position();
+		if (buffer.remaining() >= 3 && buffer.get(start) == (byte) 0xef && buffer.get(start + 1) == (byte) 0xbb
+				&& buffer.get(start + 2) == (byte) 0xbf) {
+			buffer.position(start + 3);
+		}
+	}
+
+	/**
+	 * @return The fields of the next record, <code>null</code> at the end of the buffer
+	 */
+	@Nullable
+	public String[] readRecord() {
+		if (!buffer.hasRemaining()) return null;
+
+		List<String> fields = new ArrayList<>();
+		while (true) {
+			fields.add(readField());
+			if (!buffer.hasRemaining()) break;
+
+			byte b = buffer.get();
+			if (b == delimiter) continue;
+			if (b == CR && buffer.hasRemaining() && buffer.get(buffer.position()) == LF) buffer.get();
+			break;
+		}
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/** Reads a field, up to the delimiter or end of line after it */
+	private String readField() {
+		fieldLength = 0;
+		boolean quoted = false;
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get(buffer.position());
+			if (quoted) {
+				buffer.get();
+				if (b != QUOTE) append(b);
+				else if (buffer.hasRemaining() && buffer.get(buffer.position()) == QUOTE) append(buffer.get());
+				else quoted = false;
+			}
+			else if (b == delimiter || b == CR || b == LF) {
+				break;
+			}
+			else {
+				buffer.get();
+				if (b == QUOTE) quoted = true;
+				else append(b);
+			}
+		}
+		return new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+	}
+
+	private void append(byte b) {
+		if (fieldLength == field.length) field = Arrays.copyOf(field, field.length * 2);
+		field[fieldLength++] = b;
+	}
+}
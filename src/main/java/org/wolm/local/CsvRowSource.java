@@ -0,0 +1,77 @@
+package org.wolm.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.wolm.google.GoogleRow;
+import org.wolm.google.RowSource;
+
+/**
+ * Rows of a worksheet exported as comma-separated values ("File &gt; Download &gt; Comma-separated values"). The first
+ * record holds the headers of the columns.
+ * <p>
+ * The file is memory-mapped and {@link CsvParser parsed} in place, a record at a time.
+ *
+ * @author wolm
+ */
+public class CsvRowSource extends RowSource {
+	@Nonnull
+	private final File file;
+	private final char delimiter;
+
+	public CsvRowSource(@Nonnull File file) {
+		this(file, ',');
+	}
+
+	/**
+	 * @param file Exported file
+	 * @param delimiter Character between the fields, like <code>'\t'</code> for tab-separated values
+	 */
+	public CsvRowSource(@Nonnull File file, char delimiter) {
+		super();
+		this.file = file;
+		this.delimiter = delimiter;
+	}
+
+	@Nonnull
+	public File getFile() {
+		return file;
+	}
+
+	/** @return Name of the file without its extension */
+	@Override
+	public String getTitle() {
+		String name = file.getName();
+		int extension = name.lastIndexOf('.');
+		return extension > 0 ? name.substring(0, extension) : name;
+	}
+
+	@Override
+	@Nonnull
+	protected List<GoogleRow> loadRows() throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		List<GoogleRow> rows = new ArrayList<>();
+		CsvParser parser = new CsvParser(buffer, delimiter);
+		String[] headers = parser.readRecord();
+		if (headers == null) return rows;
+
+		String[] columnNames = toColumnNames(headers);
+		// like the list feed, the rows end at the first blank row
+		String[] values;
+		while ((values = parser.readRecord()) != null && !isBlankRow(values)) {
+			rows.add(createRow(columnNames, values));
+		}
+		return rows;
+	}
+}
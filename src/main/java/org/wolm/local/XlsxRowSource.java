@@ -0,0 +1,348 @@
+package org.wolm.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.wolm.google.GoogleRow;
+import org.wolm.google.RowSource;
+
+/**
+ * Rows of a worksheet of a spreadsheet exported as an Excel workbook ("File &gt; Download &gt; Microsoft Excel"). The
+ * first row of the worksheet holds the headers of the columns.
+ * <p>
+ * The XML of the worksheet is streamed a cell at a time rather than loaded as a document; only the shared strings and
+ * the cell styles of the workbook are kept in memory. Cells are turned into the text the list feed of the worksheet
+ * would hold: dates (numbers with a date format) are written as M/d/yyyy, which {@link GoogleRow} reads like the dates
+ * of a Google worksheet.
+ *
+ * @author wolm
+ */
+public class XlsxRowSource extends RowSource {
+	private static final String RELATIONSHIPS_NAMESPACE = //
+	"http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	@Nonnull
+	private final File file;
+	@Nonnull
+	private final String sheetName;
+
+	/**
+	 * @param file Exported workbook
+	 * @param sheetName Name of the worksheet to read
+	 */
+	public XlsxRowSource(@Nonnull File file, @Nonnull String sheetName) {
+		super();
+		this.file = file;
+		this.sheetName = sheetName;
+	}
+
+	@Nonnull
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public String getTitle() {
+		return sheetName;
+	}
+
+	/**
+	 * @throws IOException if the file is not a workbook or has no worksheet with the name
+	 */
+	@Override
+	@Nonnull
+	protected List<GoogleRow> loadRows() throws IOException {
+		try (ZipFile zip = new ZipFile(file)) {
+			Workbook workbook = readWorkbook(zip);
+			String sheetPath = workbook.sheetPaths.get(sheetName);
+			if (sheetPath == null) throw new IOException("No worksheet named '" + sheetName + "' in " + file);
+
+			List<String> sharedStrings = readSharedStrings(zip);
+			boolean[] dateStyles = readDateStyles(zip);
+			try (InputStream in = openEntry(zip, sheetPath)) {
+				return readSheet(in, workbook, sharedStrings, dateStyles);
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Cannot read " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/** What the rows of a worksheet need from the workbook */
+	private static class Workbook {
+		/** path in the file of each worksheet, by name */
+		final Map<String, String> sheetPaths = new HashMap<>();
+		/** <code>true</code> if dates count days from 1904 rather than 1900 */
+		boolean date1904 = false;
+	}
+
+	private Workbook readWorkbook(ZipFile zip) throws IOException, XMLStreamException {
+		Workbook workbook = new Workbook();
+		Map<String, String> sheetIds = new HashMap<>();
+		try (InputStream in = openEntry(zip, "xl/workbook.xml")) {
+			XMLStreamReader xml = XML_INPUT_FACTORY.createXMLStreamReader(in);
+			while (xml.hasNext()) {
+				if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+				if ("sheet".equals(xml.getLocalName())) {
+					String id = xml.getAttributeValue(RELATIONSHIPS_NAMESPACE, "id");
+					sheetIds.put(id, xml.getAttributeValue(null, "name"));
+				}
+				else if ("workbookPr".equals(xml.getLocalName())) {
+					String date1904 = xml.getAttributeValue(null, "date1904");
+					workbook.date1904 = "1".equals(date1904) || "true".equals(date1904);
+				}
+			}
+			xml.close();
+		}
+
+		try (InputStream in = openEntry(zip, "xl/_rels/workbook.xml.rels")) {
+			XMLStreamReader xml = XML_INPUT_FACTORY.createXMLStreamReader(in);
+			while (xml.hasNext()) {
+				if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+				if (!"Relationship".equals(xml.getLocalName())) continue;
+				String name = sheetIds.get(xml.getAttributeValue(null, "Id"));
+				String target = xml.getAttributeValue(null, "Target");
+				if (name == null || target == null) continue;
+				workbook.sheetPaths.put(name, target.startsWith("/") ? target.substring(1) : "xl/" + target);
+			}
+			xml.close();
+		}
+		return workbook;
+	}
+
+	/** @return The strings shared by the cells of the workbook, by index */
+	private List<String> readSharedStrings(ZipFile zip) throws IOException, XMLStreamException {
+		List<String> strings = new ArrayList<>();
+		if (zip.getEntry("xl/sharedStrings.xml") == null) return strings;
+
+		try (InputStream in = openEntry(zip, "xl/sharedStrings.xml")) {
+			XMLStreamReader xml = XML_INPUT_FACTORY.createXMLStreamReader(in);
+			StringBuilder text = null;
+			while (xml.hasNext()) {
+				int event = xml.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String element = xml.getLocalName();
+					if ("si".equals(element)) text = new StringBuilder();
+					else if ("t".equals(element) && text != null) text.append(xml.getElementText());
+					else if ("rPh".equals(element)) skipElement(xml); // phonetic hints are not part of the text
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT && "si".equals(xml.getLocalName())) {
+					strings.add(text.toString());
+					text = null;
+				}
+			}
+			xml.close();
+		}
+		return strings;
+	}
+
+	/** @return For each cell style of the workbook, whether it formats numbers as dates */
+	private boolean[] readDateStyles(ZipFile zip) throws IOException, XMLStreamException {
+		if (zip.getEntry("xl/styles.xml") == null) return new boolean[0];
+
+		Map<Integer, Boolean> customDateFormats = new HashMap<>();
+		List<Boolean> dateStyles = new ArrayList<>();
+		try (InputStream in = openEntry(zip, "xl/styles.xml")) {
+			XMLStreamReader xml = XML_INPUT_FACTORY.createXMLStreamReader(in);
+			boolean inCellStyles = false;
+			while (xml.hasNext()) {
+				int event = xml.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String element = xml.getLocalName();
+					if ("numFmt".equals(element)) {
+						customDateFormats.put(Integer.valueOf(xml.getAttributeValue(null, "numFmtId")),
+								isDateFormat(xml.getAttributeValue(null, "formatCode")));
+					}
+					else if ("cellXfs".equals(element)) {
+						inCellStyles = true;
+					}
+					else if ("xf".equals(element) && inCellStyles) {
+						String formatId = xml.getAttributeValue(null, "numFmtId");
+						int id = formatId == null ? 0 : Integer.parseInt(formatId);
+						Boolean custom = customDateFormats.get(id);
+						dateStyles.add(custom != null ? custom : isBuiltInDateFormat(id));
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT && "cellXfs".equals(xml.getLocalName())) {
+					inCellStyles = false;
+				}
+			}
+			xml.close();
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Cannot read the styles of " + file + ": " + e.getMessage(), e);
+		}
+
+		boolean[] styles = new boolean[dateStyles.size()];
+		for (int i = 0; i < styles.length; i++)
+			styles[i] = dateStyles.get(i);
+		return styles;
+	}
+
+	/** @return <code>true</code> if the number format built into Excel with the ID shows a date */
+	static boolean isBuiltInDateFormat(int id) {
+		return (id >= 14 && id <= 17) || id == 22 || (id >= 27 && id <= 36) || (id >= 50 && id <= 58);
+	}
+
+	/**
+	 * @param formatCode Excel number format, like "yyyy-mm-dd" or "#,##0.00"
+	 * @return <code>true</code> if the format shows a date: it has a day or year outside quoted text and brackets
+	 */
+	static boolean isDateFormat(@Nullable String formatCode) {
+		if (formatCode == null) return false;
+		String code = formatCode.replaceAll("\"[^\"]*\"", "").replaceAll("\\[[^\\]]*\\]", "").replaceAll("\\\\.", "");
+		return code.matches("(?i).*[dy].*");
+	}
+
+	private List<GoogleRow> readSheet(InputStream in, Workbook workbook, List<String> sharedStrings,
+			boolean[] dateStyles) throws XMLStreamException, IOException {
+		List<GoogleRow> rows = new ArrayList<>();
+		XMLStreamReader xml = XML_INPUT_FACTORY.createXMLStreamReader(in);
+		String[] columnNames = null;
+		List<String> values = new ArrayList<>();
+		int lastRowNumber = 0;
+
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT && "row".equals(xml.getLocalName())) {
+				// a missing row is a blank row, which ends the table
+				String rowNumber = xml.getAttributeValue(null, "r");
+				int number = rowNumber == null ? lastRowNumber + 1 : Integer.parseInt(rowNumber);
+				if (columnNames != null && number != lastRowNumber + 1) break;
+				lastRowNumber = number;
+				values.clear();
+			}
+			else if (event == XMLStreamConstants.START_ELEMENT && "c".equals(xml.getLocalName())) {
+				String reference = xml.getAttributeValue(null, "r");
+				int column = reference == null ? values.size() : toColumnIndex(reference);
+				String type = xml.getAttributeValue(null, "t");
+				String style = xml.getAttributeValue(null, "s");
+				String value = readCellValue(xml, type, style == null ? 0 : Integer.parseInt(style), workbook,
+						sharedStrings, dateStyles);
+				while (values.size() <= column)
+					values.add(null);
+				values.set(column, value);
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT && "row".equals(xml.getLocalName())) {
+				String[] rowValues = values.toArray(new String[values.size()]);
+				if (columnNames == null) {
+					columnNames = toColumnNames(rowValues);
+				}
+				else {
+					if (isBlankRow(rowValues)) break;
+					rows.add(createRow(columnNames, rowValues));
+				}
+			}
+		}
+		xml.close();
+		return rows;
+	}
+
+	/** Reads the value of the cell the reader is at, leaving the reader at the end of the cell */
+	private String readCellValue(XMLStreamReader xml, String type, int style, Workbook workbook,
+			List<String> sharedStrings, boolean[] dateStyles) throws XMLStreamException, IOException {
+		String value = null;
+		while (xml.hasNext()) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) break;
+			if (event != XMLStreamConstants.START_ELEMENT) continue;
+			if ("v".equals(xml.getLocalName())) {
+				value = xml.getElementText();
+			}
+			else if ("t".equals(xml.getLocalName())) {
+				// inline string
+				value = value == null ? xml.getElementText() : value + xml.getElementText();
+			}
+			else if ("rPh".equals(xml.getLocalName())) {
+				skipElement(xml);
+			}
+		}
+		if (value == null) return null;
+
+		try {
+			if ("s".equals(type)) return sharedStrings.get(Integer.parseInt(value));
+			if ("b".equals(type)) return "1".equals(value) ? "TRUE" : "FALSE";
+			if (type == null || "n".equals(type)) {
+				if (style < dateStyles.length && dateStyles[style]) {
+					return toDate(Double.parseDouble(value), workbook.date1904);
+				}
+				return value.endsWith(".0") ? value.substring(0, value.length() - 2) : value;
+			}
+			return value;
+		}
+		catch (NumberFormatException | IndexOutOfBoundsException e) {
+			throw new IOException("Bad cell value '" + value + "' in " + file, e);
+		}
+	}
+
+	/**
+	 * @param serial Excel date: days since the start of 1900 (or 1904), with the time of day as the fraction
+	 * @param date1904 <code>true</code> if the workbook counts days from 1904
+	 * @return The day of the date, written as M/d/yyyy
+	 */
+	static String toDate(double serial, boolean date1904) {
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		calendar.clear();
+		if (date1904) {
+			calendar.set(1904, Calendar.JANUARY, 1);
+		}
+		else {
+			// Excel counts a February 29 1900 that never happened, so day 60 and later are a day off
+			calendar.set(1899, Calendar.DECEMBER, serial < 60 ? 31 : 30);
+		}
+		calendar.setTimeInMillis(calendar.getTimeInMillis() + (long) Math.floor(serial) * MILLIS_PER_DAY);
+		return (calendar.get(Calendar.MONTH) + 1) + "/" + calendar.get(Calendar.DAY_OF_MONTH) + "/"
+				+ calendar.get(Calendar.YEAR);
+	}
+
+	/**
+	 * @param reference Reference of a cell, like "B3"
+	 * @return Base-0 index of the cell's column
+	 */
+	static int toColumnIndex(@Nonnull String reference) {
+		int column = 0;
+		for (int i = 0; i < reference.length() && Character.isLetter(reference.charAt(i)); i++)
+			column = column * 26 + (Character.toUpperCase(reference.charAt(i)) - 'A' + 1);
+		return column - 1;
+	}
+
+	/** @return A factory for the parts of the workbook that neither reads DTDs nor resolves external entities */
+	private static XMLInputFactory createXmlInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
+	private static void skipElement(XMLStreamReader xml) throws XMLStreamException {
+		for (int depth = 1; depth > 0 && xml.hasNext();) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+		}
+	}
+
+	private InputStream openEntry(ZipFile zip, String path) throws IOException {
+		ZipEntry entry = zip.getEntry(path);
+		if (entry == null) throw new IOException(file + " is not an Excel workbook, it has no " + path);
+		return zip.getInputStream(entry);
+	}
+}
@@ -1,31 +1,56 @@
 package org.wolm.podcast;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.net.HttpURLConnection;
+import java.io.Writer;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
-import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.wolm.aws.AwsS3Helper;
+import org.wolm.aws.S3Location;
 import org.wolm.google.GoogleHelper;
 import org.wolm.google.GoogleRow;
 import org.wolm.google.GoogleSpreadsheet;
 import org.wolm.google.GoogleWorksheet;
 import org.wolm.google.RowFilter;
-import org.wolm.google.RowFilter_MaxCount;
+import org.wolm.google.RowFilterChain;
 import org.wolm.google.RowFilter_Value;
 import org.wolm.google.RowFilter_ValueStartsWith;
+import org.wolm.google.RowSource;
+import org.wolm.google.TopRowSelector;
+import org.wolm.google.WorksheetQuery;
+import org.wolm.local.CsvRowSource;
+import org.wolm.local.XlsxRowSource;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
@@ -39,12 +64,32 @@ import com.google.gdata.util.ServiceException;
 public class App {
 	private static final String PODCAST_BUCKET_NAME = "wordoflife.mn.podcast";
 	private static final String PODCAST_KEY = "wolmn-service-podcast.rss.xml";
+	/** columns of the message log that podcasts are made from */
+	private static final String[] PODCAST_COLUMNS = { "date", "name", "description", "audiolink", "visibility",
+			"playlist" };
+	private static final String PODCAST_CHARSET = "UTF-8";
+	private static final String UPLOAD_AUDIO_COMMAND = "upload-audio";
+	private static final String GOOGLE_APPLICATION_NAME = "org-wolm-podcast";
+	/** how long shutting down waits for the daemon to finish the cycle it is in */
+	private static final long DAEMON_SHUTDOWN_MILLIS = 60 * 1000;
 
-	private final SimpleDateFormat rssFormatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z");
 	private final SimpleDateFormat yearMonthDayFormatter = new SimpleDateFormat("yyyy-MM-dd");
+	private final SimpleDateFormat statusTimeFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
-	private final GoogleHelper googleHelper;
-	private final AwsS3Helper s3Helper;
+	// reused between renders, so a podcast costs no allocations once the buffers have grown to size
+	private final ReusableByteArrayOutputStream renderBuffer = new ReusableByteArrayOutputStream(64 * 1024);
+	private final ReusableByteArrayOutputStream uploadBuffer = new ReusableByteArrayOutputStream(16 * 1024);
+
+	// created the first time they are needed, so runs that do not use Google or Amazon never load their clients
+	private GoogleHelper googleHelper;
+	private AwsS3Helper s3Helper;
+
+	// kept between the cycles of the daemon
+	private RowSource messageLog = null;
+	private long messageLogModified = 0;
+	/** MD5 of the podcast last uploaded to each key */
+	private final Map<String, String> uploadedDigests = new HashMap<>();
+	private final CountDownLatch daemonStop = new CountDownLatch(1);
 
 	/* Command Parameters */
 	@Parameter(names = "--help", description = "This help page.", help = true)
@@ -73,10 +118,65 @@ public class App {
 
 	@Parameter(names = "--upload", description = "Specify this if you want the podcast automatically uploaded to Amazon S3 when completed. "
 			+ "If you specify an --out parameter, then the file will be written to that file, then uploaded. "
-			+ "If you do not specify an --out parameter, but do specify --upload, then the podcast will be written to a "
-			+ "temporary file instead of the console.")
+			+ "If you do not specify an --out parameter, but do specify --upload, then the podcast will be uploaded "
+			+ "straight from memory instead of being written to the console.")
 	private boolean podcastUploadedWhenDone = false;
 
+	@Parameter(names = "--gzip", description = "Compress the uploaded podcast (with Content-Encoding: gzip).")
+	private boolean uploadCompressed = false;
+
+	@Parameter(names = "--cacheControl", description = "Cache-Control header of the uploaded podcast.")
+	private String uploadCacheControl = "public, max-age=300";
+
+	@Parameter(names = "--probeThreads", description = "Maximum number of audio files whose size is requested at the same time.")
+	private int maximumConcurrentProbes = 8;
+
+	@Parameter(names = "--probeTimeout", description = "Number of seconds to wait for the size of an audio file before "
+			+ "giving up and using a default size.")
+	private int probeTimeoutSeconds = 15;
+
+	@Parameter(names = "--cacheHours", description = "Number of hours the size of an audio file is remembered before "
+			+ "asking the server whether it changed. 0 always asks.")
+	private int enclosureCacheHours = 24 * 7;
+
+	@Parameter(names = "--failureCacheHours", description = "Number of hours an audio file whose size could not be "
+			+ "found is remembered before trying it again.")
+	private int enclosureFailureCacheHours = 6;
+
+	@Parameter(names = "--noCache", description = "Do not read or update the audio file and message log caches in "
+			+ "~/.wolm/cache.")
+	private boolean enclosureCacheDisabled = false;
+
+	@Parameter(names = "--fullSync", description = "When the message log has changed, download all of it instead of "
+			+ "only the rows changed since the last run.")
+	private boolean fullSync = false;
+
+	@Parameter(names = "--source", description = "Read the message log from a file downloaded from Google Drive "
+			+ "instead of from Google: a .csv file, or an .xlsx file holding the --worksheet.")
+	private String sourceFilePath = null;
+
+	@Parameter(names = "--daemon", description = "Keep running, and publish the podcast again whenever the message log "
+			+ "changes. Needs --out or --upload.")
+	private boolean daemon = false;
+
+	@Parameter(names = "--pollSeconds", description = "In daemon mode, number of seconds between checks of whether the "
+			+ "message log changed.")
+	private int pollSeconds = 60;
+
+	@Parameter(names = "--noS3Listing", description = "Do not list the S3 audio bucket to find the size of audio files "
+			+ "stored there; look each one up individually instead.")
+	private boolean s3ListingDisabled = false;
+
+	@Parameter(names = "--force", description = "Upload the podcast even if it is the same as the one already on Amazon.")
+	private boolean uploadForced = false;
+
+	@Parameter(names = "--feed", description = "A feed to generate, as comma-separated name=value pairs: key (required, "
+			+ "the S3 key and file name of the feed), title, description, playlist (default Service), day (default any) "
+			+ "and length (default 6). Repeat it to generate several feeds from one read of the message log, in which "
+			+ "case --out is the directory to write them to.", converter = FeedDefinition.Converter.class,
+			splitter = FeedDefinition.Splitter.class)
+	private List<FeedDefinition> feeds = new ArrayList<>();
+
 	/**
 	 * Main CLI interface
 	 * 
@@ -85,16 +185,33 @@ public class App {
 	 */
 	public static void main(String[] args) throws Exception {
 		// create app
-		App app = new App(new GoogleHelper("org-wolm-podcast"), new AwsS3Helper());
-		JCommander jCommander = new JCommander(app, args);
+		App app = new App();
+		UploadAudioCommand uploadAudioCommand = new UploadAudioCommand();
+		JCommander jCommander = new JCommander(app);
+		jCommander.addCommand(UPLOAD_AUDIO_COMMAND, uploadAudioCommand);
+		jCommander.parse(args);
 		if (app.isHelpRequested()) {
 			jCommander.usage();
 			System.exit(0);
 		}
 
+		if (UPLOAD_AUDIO_COMMAND.equals(jCommander.getParsedCommand())) {
+			uploadAudioCommand.upload(app.getS3Helper(), System.out);
+			return;
+		}
+
 		app.podcast();
 	}
 
+	/** Creates an app that creates its Google and Amazon helpers when it first needs them */
+	public App() {
+		this(null, null);
+	}
+
+	/**
+	 * @param googleHelper Helper to read the message log with, <code>null</code> to create one when needed
+	 * @param s3Helper Helper to upload with, <code>null</code> to create one when needed
+	 */
 	public App(GoogleHelper googleHelper, AwsS3Helper s3Helper) {
 		super();
 		this.googleHelper = googleHelper;
@@ -165,59 +282,422 @@ public class App {
 		this.podcastUploadedWhenDone = uploadPodcast;
 	}
 
-	public GoogleHelper getHelper() {
+	public int getMaximumConcurrentProbes() {
+		return maximumConcurrentProbes;
+	}
+
+	public void setMaximumConcurrentProbes(int maximumConcurrentProbes) {
+		this.maximumConcurrentProbes = maximumConcurrentProbes;
+	}
+
+	public int getProbeTimeoutSeconds() {
+		return probeTimeoutSeconds;
+	}
+
+	public void setProbeTimeoutSeconds(int probeTimeoutSeconds) {
+		this.probeTimeoutSeconds = probeTimeoutSeconds;
+	}
+
+	public int getEnclosureCacheHours() {
+		return enclosureCacheHours;
+	}
+
+	public void setEnclosureCacheHours(int enclosureCacheHours) {
+		this.enclosureCacheHours = enclosureCacheHours;
+	}
+
+	public int getEnclosureFailureCacheHours() {
+		return enclosureFailureCacheHours;
+	}
+
+	public void setEnclosureFailureCacheHours(int enclosureFailureCacheHours) {
+		this.enclosureFailureCacheHours = enclosureFailureCacheHours;
+	}
+
+	public boolean isFullSync() {
+		return fullSync;
+	}
+
+	public void setFullSync(boolean fullSync) {
+		this.fullSync = fullSync;
+	}
+
+	public String getSourceFilePath() {
+		return sourceFilePath;
+	}
+
+	public void setSourceFilePath(String sourceFilePath) {
+		this.sourceFilePath = sourceFilePath;
+	}
+
+	public boolean isDaemon() {
+		return daemon;
+	}
+
+	public void setDaemon(boolean daemon) {
+		this.daemon = daemon;
+	}
+
+	public int getPollSeconds() {
+		return pollSeconds;
+	}
+
+	public void setPollSeconds(int pollSeconds) {
+		this.pollSeconds = pollSeconds;
+	}
+
+	public boolean isEnclosureCacheDisabled() {
+		return enclosureCacheDisabled;
+	}
+
+	public void setEnclosureCacheDisabled(boolean enclosureCacheDisabled) {
+		this.enclosureCacheDisabled = enclosureCacheDisabled;
+	}
+
+	public boolean isS3ListingDisabled() {
+		return s3ListingDisabled;
+	}
+
+	public void setS3ListingDisabled(boolean s3ListingDisabled) {
+		this.s3ListingDisabled = s3ListingDisabled;
+	}
+
+	public boolean isUploadCompressed() {
+		return uploadCompressed;
+	}
+
+	public void setUploadCompressed(boolean uploadCompressed) {
+		this.uploadCompressed = uploadCompressed;
+	}
+
+	public String getUploadCacheControl() {
+		return uploadCacheControl;
+	}
+
+	public void setUploadCacheControl(String uploadCacheControl) {
+		this.uploadCacheControl = uploadCacheControl;
+	}
+
+	public boolean isUploadForced() {
+		return uploadForced;
+	}
+
+	public void setUploadForced(boolean uploadForced) {
+		this.uploadForced = uploadForced;
+	}
+
+	public List<FeedDefinition> getFeeds() {
+		return feeds;
+	}
+
+	public void setFeeds(List<FeedDefinition> feeds) {
+		this.feeds = feeds;
+	}
+
+	/** @return The Sunday service podcast, which is generated when no feeds are given */
+	public FeedDefinition getDefaultFeed() {
+		return new FeedDefinition(PODCAST_KEY, "Word of Life Ministries: Sunday",
+				"Podcast of Word of Life Ministries Sunday services", "Service", null, getMaximumMessagesInPodcast());
+	}
+
+	public synchronized GoogleHelper getHelper() {
+		if (googleHelper == null) googleHelper = new GoogleHelper(GOOGLE_APPLICATION_NAME);
 		return googleHelper;
 	}
 
+	public synchronized AwsS3Helper getS3Helper() {
+		if (s3Helper == null) s3Helper = new AwsS3Helper();
+		return s3Helper;
+	}
+
 	public void podcast() throws FileNotFoundException, Exception {
-		// determine output vectors
-		PrintStream outStream = System.out;
-		File outFile = null;
-		// we always have to write to a file when uploading
-		if (getOutFilePath() != null || isPodcastUploadedWhenDone()) {
-			// get the name of the file to write to. use a tmp one if not provided
-			if (getOutFilePath() == null) setOutFilePath(System.getProperty("java.io.tmpdir") + "/" + PODCAST_KEY);
+		boolean multipleFeeds = !getFeeds().isEmpty();
+		List<FeedDefinition> feeds = multipleFeeds ? getFeeds() : Collections.singletonList(getDefaultFeed());
+
+		// validate the output path before doing any work
+		File outPath = null;
+		if (getOutFilePath() != null) {
+			outPath = new File(getOutFilePath());
+			File outDirectory = multipleFeeds ? outPath : outPath.getAbsoluteFile().getParentFile();
+			if (!outDirectory.isDirectory()) throw new FileNotFoundException(outDirectory.getAbsolutePath());
+		}
 
-			// validate the output path and delete existing file
-			outFile = new File(getOutFilePath());
-			File outPath = outFile.getParentFile();
-			if (!outPath.exists()) throw new FileNotFoundException(outPath.getAbsolutePath());
-			if (outFile.exists()) outFile.delete();
+		if (isDaemon()) {
+			daemon(feeds, outPath, multipleFeeds);
+			return;
+		}
 
-			// create a stream for the file
-			outStream = new PrintStream(outFile);
+		// without a file or upload, the podcast goes straight to the console
+		if (outPath == null && !isPodcastUploadedWhenDone()) {
+			Map<FeedDefinition, List<PodcastItem>> itemsByFeed = collectPodcastItems(feeds,
+					isVerbose() ? System.err : null);
+			if (itemsByFeed == null) return;
+			Writer out = new OutputStreamWriter(System.out);
+			for (Map.Entry<FeedDefinition, List<PodcastItem>> feedItems : itemsByFeed.entrySet())
+				writePodcast(feedItems.getKey(), feedItems.getValue(), out);
+			return;
 		}
 
-		// if outputting to a file, wire the status to stdout
-		// otherwise, wire the status to stderr only if verbose mode
-		PrintStream statusStream = null;
-		if (outStream != System.out) statusStream = System.out;
-		else if (isVerbose()) statusStream = System.err;
+		// otherwise wire the status to stdout
+		publishPodcasts(feeds, outPath, multipleFeeds, System.out);
+	}
 
-		// write the podcast
-		generatePodcast(outStream, statusStream);
-		if (outStream != System.out) outStream.close();
+	/**
+	 * Renders each feed into memory, then writes it to its file and uploads it.
+	 * 
+	 * @param feeds Feeds to publish
+	 * @param outPath File (or directory, for multiple feeds) to write to, <code>null</code> for none
+	 * @param multipleFeeds <code>true</code> if <code>outPath</code> is a directory to write each feed to under its key
+	 * @param statusStream Stream to write status to, <code>null</code> for none
+	 * @return Number of feeds uploaded because they changed. -1 if the message log has no data.
+	 * @throws Exception
+	 */
+	private int publishPodcasts(List<FeedDefinition> feeds, File outPath, boolean multipleFeeds,
+			PrintStream statusStream) throws Exception {
+		Map<FeedDefinition, List<PodcastItem>> itemsByFeed = collectPodcastItems(feeds, statusStream);
+		if (itemsByFeed == null) return -1;
+
+		int uploadCount = 0;
+		for (Map.Entry<FeedDefinition, List<PodcastItem>> feedItems : itemsByFeed.entrySet()) {
+			FeedDefinition feed = feedItems.getKey();
+			renderBuffer.reset();
+			writePodcast(feed, feedItems.getValue(), new OutputStreamWriter(renderBuffer, PODCAST_CHARSET));
+
+			// write the podcast
+			if (outPath != null) {
+				File outFile = multipleFeeds ? new File(outPath, feed.getKey()) : outPath;
+				try (OutputStream fileStream = new FileOutputStream(outFile)) {
+					renderBuffer.writeTo(fileStream);
+				}
+			}
+
+			// upload the podcast
+			if (isPodcastUploadedWhenDone()
+					&& uploadPodcast(feed.getKey(), renderBuffer.getBuffer(), renderBuffer.size(), statusStream)) {
+				uploadCount++;
+			}
+		}
+		return uploadCount;
+	}
+
+	/**
+	 * Keeps running until the JVM is shut down (or {@link #stopDaemon()}), and publishes the podcasts again whenever
+	 * the message log changes. The Google and Amazon clients stay connected and the access token is refreshed ahead of
+	 * time. Between changes each cycle only asks whether the worksheet changed (see
+	 * {@link GoogleWorksheet#checkForChanges()}), or looks at the modification time of the --source file. A podcast is
+	 * only uploaded if it differs from the one last uploaded.
+	 * <p>
+	 * Every cycle prints one status line. A cycle that fails is retried on the next one. On shutdown the cycle in
+	 * progress is finished first.
+	 * 
+	 * @param feeds Feeds to publish
+	 * @param outPath File (or directory, for multiple feeds) to write to, <code>null</code> for none
+	 * @param multipleFeeds <code>true</code> if <code>outPath</code> is a directory to write each feed to under its key
+	 * @throws Exception if there is nowhere to publish the podcasts
+	 */
+	public void daemon(List<FeedDefinition> feeds, File outPath, boolean multipleFeeds) throws Exception {
+		if (outPath == null && !isPodcastUploadedWhenDone()) {
+			throw new Exception("ERROR: --daemon needs --out or --upload");
+		}
 
-		// upload the podcast
-		if (outFile != null && isPodcastUploadedWhenDone()) {
-			uploadPodcast(outFile, statusStream);
+		final Thread daemonThread = Thread.currentThread();
+		Thread shutdownHook = new Thread("Podcast daemon shutdown") {
+			@Override
+			public void run() {
+				stopDaemon();
+				try {
+					daemonThread.join(DAEMON_SHUTDOWN_MILLIS);
+				}
+				catch (InterruptedException e) {
+					// ignore, just shut down
+				}
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		if (getSourceFilePath() == null) getHelper().startBackgroundTokenRefresh(60 * 1000);
+		System.out.println("Publishing " + feeds.size() + " podcast(s) whenever the message log changes, checking "
+				+ "every " + getPollSeconds() + " seconds");
+
+		PrintStream statusStream = isVerbose() ? System.out : null;
+		boolean publishPending = true;
+		try {
+			do {
+				long startTime = System.currentTimeMillis();
+				String status;
+				try {
+					if (!publishPending) publishPending = hasMessageLogChanged();
+					if (!publishPending) {
+						status = "Message log unchanged";
+					}
+					else {
+						int uploadCount = publishPodcasts(feeds, outPath, multipleFeeds, statusStream);
+						publishPending = false;
+						status = uploadCount < 0 ? "Message log has no data" : "Message log changed, published "
+								+ feeds.size() + " podcast(s)" + (isPodcastUploadedWhenDone() ? ", uploaded "
+										+ uploadCount : "");
+					}
+				}
+				catch (Exception e) {
+					status = "ERROR: " + e.getMessage();
+				}
+				System.out.println(statusTimeFormatter.format(new Date()) + "  " + status + " ("
+						+ (System.currentTimeMillis() - startTime) + " ms)");
+			} while (!daemonStop.await(getPollSeconds(), TimeUnit.SECONDS));
 		}
+		finally {
+			synchronized (this) {
+				if (googleHelper != null) googleHelper.stopBackgroundTokenRefresh();
+				if (s3Helper != null) s3Helper.shutdown();
+			}
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			}
+			catch (IllegalStateException e) {
+				// already shutting down
+			}
+		}
+		System.out.println("Stopped");
+	}
 
-		if (statusStream != null && statusStream != System.out && statusStream != System.err) statusStream.close();
+	/** Makes the daemon stop once the cycle it is in is done */
+	public void stopDaemon() {
+		daemonStop.countDown();
+	}
+
+	/**
+	 * @return <code>true</code> if the message log changed since its rows were read, in which case they are read again
+	 * the next time they are needed
+	 * @throws Exception
+	 */
+	private boolean hasMessageLogChanged() throws Exception {
+		if (messageLog == null) return true;
+		if (messageLog instanceof GoogleWorksheet) return ((GoogleWorksheet) messageLog).checkForChanges();
+
+		long modified = new File(getSourceFilePath()).lastModified();
+		if (modified == messageLogModified) return false;
+		messageLogModified = modified;
+		messageLog.refresh();
+		return true;
 	}
 
 	/**
 	 * Reads the WOLM message log and outputs a podcast that matches the command line parameters.
 	 * 
-	 * @param cmd Command line parameters
-	 * @param outStream Stream to write the output podcast to
+	 * @param out Writer to write the output podcast to
+	 * @param statusStream Stream to write status to, <code>null</code> for none
 	 * @return <code>true</code> on success, <code>false</code> on failure
 	 * @throws ServiceException
 	 * @throws IOException
 	 * @throws URISyntaxException
 	 */
-	public boolean generatePodcast(PrintStream outStream, PrintStream statusStream) throws Exception {
+	public boolean generatePodcast(Writer out, PrintStream statusStream) throws Exception {
+		FeedDefinition feed = getDefaultFeed();
+		Map<FeedDefinition, List<PodcastItem>> itemsByFeed = collectPodcastItems(Collections.singletonList(feed),
+				statusStream);
+		if (itemsByFeed == null) return false;
+		writePodcast(feed, itemsByFeed.get(feed), out);
+		return true;
+	}
+
+	/**
+	 * Reads the WOLM message log once and collects the messages of every feed. The rows are scanned once for all the
+	 * feeds, and the audio files of all of them are sized together, so each additional feed costs very little.
+	 * 
+	 * @param feeds Feeds to collect messages for
+	 * @param statusStream Stream to write status to, <code>null</code> for none
+	 * @return The messages of each feed in chronological order, in the same order as <code>feeds</code>.
+	 * <code>null</code> if the message log has no data.
+	 */
+	public Map<FeedDefinition, List<PodcastItem>> collectPodcastItems(List<FeedDefinition> feeds,
+			PrintStream statusStream) throws Exception {
+		RowSource source = findMessageLog(statusStream);
+
+		// get the rows, only the ones that can be in a podcast when there is no copy of the message log to keep up
+		// to date
+		List<GoogleRow> rows;
+		RowSource indexedSource = null;
+		if (source instanceof GoogleWorksheet && getHelper().getCacheDirectory() == null) {
+			WorksheetQuery query = new WorksheetQuery(createPodcastRowFilter()).select(PODCAST_COLUMNS);
+			rows = ((GoogleWorksheet) source).getRows(query);
+			if (statusStream != null) statusStream.println("  Downloaded " + rows.size() + " rows (" + query + ")");
+			if (!rows.isEmpty()) checkColumns(rows.get(0).getColumnNames());
+		}
+		else {
+			checkColumns(source.getColumnNames());
+			rows = source.getRows();
+			indexedSource = source;
+			if (source instanceof GoogleWorksheet) {
+				GoogleWorksheet worksheet = (GoogleWorksheet) source;
+				if (statusStream != null && worksheet.isRowsFromSnapshot()) {
+					statusStream.println("  Worksheet unchanged since the last run, read " + rows.size()
+							+ " rows from cache");
+				}
+				else if (statusStream != null && worksheet.getSyncedRowCount() >= 0) {
+					statusStream.println("  Worksheet synchronized, downloaded " + worksheet.getSyncedRowCount()
+							+ " of " + rows.size() + " rows");
+				}
+			}
+			else if (statusStream != null) {
+				statusStream.println("  Read " + rows.size() + " rows");
+			}
+		}
+		if (!rows.isEmpty() && !rows.get(0).hasColumn("date")) {
+			System.err.println("ERROR: Worksheet '" + getWorksheetName() + "' contains no data to read");
+			return null;
+		}
+
+		// pick the most recent messages of each feed, in chronological order
+		Map<FeedDefinition, List<GoogleRow>> rowsByFeed = selectRows(rows, indexedSource, feeds);
+		List<GoogleRow> selectedRows = mergeRows(rowsByFeed.values());
+
+		// printWorksheetRows(worksheet, selectedRows);
+
+		// find the size of all the audio files at once rather than one item at a time
+		Map<String, Enclosure> enclosures = probeEnclosures(selectedRows, statusStream);
+
+		// messages that are in several feeds are only processed once
+		if (statusStream != null) statusStream.println("Exporting " + selectedRows.size() + " recent services...");
+		Map<GoogleRow, PodcastItem> itemsByRow = new IdentityHashMap<>();
+		int index = 1;
+		for (GoogleRow row : selectedRows) {
+			if (statusStream != null) statusStream.print("  " + (index++) + ". ");
+			itemsByRow.put(row, createPodcastItem(row, enclosures, statusStream));
+		}
+
+		Map<FeedDefinition, List<PodcastItem>> itemsByFeed = new LinkedHashMap<>();
+		for (Map.Entry<FeedDefinition, List<GoogleRow>> feedRows : rowsByFeed.entrySet()) {
+			List<PodcastItem> items = new ArrayList<>(feedRows.getValue().size());
+			for (GoogleRow row : feedRows.getValue())
+				items.add(itemsByRow.get(row));
+			itemsByFeed.put(feedRows.getKey(), items);
+		}
+		return itemsByFeed;
+	}
+
+	/**
+	 * Finds the message log: the file given with --source, or else the worksheet of the spreadsheet on Google Drive.
+	 * It is only looked up once, then kept.
+	 * 
+	 * @param statusStream Stream to write status to, <code>null</code> for none
+	 * @return Rows of the message log
+	 * @throws Exception if there is no such file, spreadsheet or worksheet
+	 */
+	private RowSource findMessageLog(PrintStream statusStream) throws Exception {
+		if (messageLog != null) return messageLog;
+
+		if (getSourceFilePath() != null) {
+			File file = new File(getSourceFilePath());
+			if (!file.isFile()) throw new Exception("ERROR: Cannot find message log file '" + file + "'");
+			if (statusStream != null) statusStream.println("Reading message log from '" + file + "'...");
+			messageLogModified = file.lastModified();
+			boolean workbook = file.getName().toLowerCase().endsWith(".xlsx");
+			messageLog = workbook ? new XlsxRowSource(file, getWorksheetName()) : new CsvRowSource(file);
+			return messageLog;
+		}
+
 		// get the spreadsheet
+		if (isEnclosureCacheDisabled()) getHelper().setCacheDirectory(null);
+		getHelper().setIncrementalSync(!isFullSync());
 		if (statusStream != null) {
 			statusStream.println("Retrieving '" + getSpreadsheetName() + "' spreadsheet from Google...");
 		}
@@ -232,77 +712,208 @@ public class App {
 			throw new Exception("ERROR: Cannot find worksheet titled '" + getWorksheetName() + "' in the spreadsheet '"
 					+ getWorksheetName() + "'");
 		}
-		if (!worksheet.hasColumn("visibility")) {
-			throw new Exception("Worksheet '" + getWorksheetName() + "' has no 'visibility' data.");
+		messageLog = worksheet;
+		return messageLog;
+	}
+
+	/**
+	 * @param columnNames Columns of the message log
+	 * @throws Exception if a column needed to find the messages of a podcast is missing
+	 */
+	private void checkColumns(Collection<String> columnNames) throws Exception {
+		for (String columnName : new String[] { "visibility", "audiolink", "playlist" }) {
+			if (!columnNames.contains(columnName)) {
+				throw new Exception("Worksheet '" + getWorksheetName() + "' has no '" + columnName + "' data.");
+			}
 		}
-		if (!worksheet.hasColumn("audiolink")) {
-			throw new Exception("Worksheet '" + getWorksheetName() + "' has no 'audiolink' data.");
+	}
+
+	/** @return Filter keeping the messages that can be in a podcast, whatever the feed */
+	private static RowFilterChain createPodcastRowFilter() {
+		// indexed (and structured query) conditions first
+		return new RowFilterChain(new RowFilter_Value("visibility", "Public"), new RowFilter_ValueStartsWith(
+				"audiolink", "http"));
+	}
+
+	/**
+	 * Picks the most recent messages of every feed in one pass over the rows. Each feed keeps only its best rows so
+	 * far, so the rows are never sorted. When the rows are all those of the message log, the visibility and playlist
+	 * columns are indexed, so only public rows are looked at, and each feed only looks at the rows of its playlist.
+	 * 
+	 * @param rows Rows of the message log
+	 * @param indexedSource The message log when <code>rows</code> are all of its rows, <code>null</code> if they are
+	 * only some of them
+	 * @param feeds Feeds to fill
+	 * @return The rows of each feed in chronological order, in the same order as <code>feeds</code>
+	 */
+	private Map<FeedDefinition, List<GoogleRow>> selectRows(List<GoogleRow> rows, RowSource indexedSource,
+			List<FeedDefinition> feeds) throws IOException, ServiceException {
+		if (indexedSource != null) indexedSource.indexColumns("visibility", "playlist");
+
+		// conditions shared by every feed
+		RowFilterChain podcastRows = createPodcastRowFilter();
+		BitSet candidates = indexedSource == null ? null : podcastRows.selectCandidates(indexedSource);
+		if (candidates == null) {
+			candidates = new BitSet(rows.size());
+			candidates.set(0, rows.size());
 		}
 
-		if (!worksheet.hasColumn("playlist")) {
-			throw new Exception("Worksheet '" + getWorksheetName() + "' has no 'playlist' data.");
+		Map<FeedDefinition, RowFilter> feedFilters = new LinkedHashMap<>();
+		Map<FeedDefinition, BitSet> feedCandidates = new HashMap<>();
+		Map<FeedDefinition, TopRowSelector> feedSelectors = new LinkedHashMap<>();
+		for (FeedDefinition feed : feeds) {
+			RowFilter feedFilter = feed.createRowFilter();
+			feedFilter.reset();
+			feedFilters.put(feed, feedFilter);
+			feedCandidates.put(feed, indexedSource == null ? null : feedFilter.selectCandidates(indexedSource));
+			feedSelectors.put(feed, new TopRowSelector("date", feed.getLength()));
 		}
 
-		// get all rows
-		List<GoogleRow> rows = worksheet.getRowsOrderedBy("date", false);
-		if (rows == null) {
-			System.err.println("ERROR: Worksheet '" + getWorksheetName() + "' contains no data to read");
-			return false;
+		for (int i = candidates.nextSetBit(0); i >= 0 && i < rows.size(); i = candidates.nextSetBit(i + 1)) {
+			GoogleRow row = rows.get(i);
+			if (!podcastRows.keepRow(row)) continue;
+			for (Map.Entry<FeedDefinition, RowFilter> feedFilter : feedFilters.entrySet()) {
+				BitSet feedRows = feedCandidates.get(feedFilter.getKey());
+				if (feedRows != null && !feedRows.get(i)) continue;
+				if (feedFilter.getValue().keepRow(row)) feedSelectors.get(feedFilter.getKey()).offer(row);
+			}
 		}
 
-		// start filtering the list of rows until we have something appropriate for the podcast
-		rows = RowFilter.filter(rows, new RowFilter_Value("visibility", "Public"));
-		rows = RowFilter.filter(rows, new RowFilter_ValueStartsWith("audiolink", "http"));
-		rows = RowFilter.filter(rows, new RowFilter_Value("playlist", "Service"));
-		rows = RowFilter.filter(rows, new RowFilter_MaxCount(getMaximumMessagesInPodcast()));
+		Map<FeedDefinition, List<GoogleRow>> rowsByFeed = new LinkedHashMap<>();
+		for (Map.Entry<FeedDefinition, TopRowSelector> feedSelector : feedSelectors.entrySet())
+			rowsByFeed.put(feedSelector.getKey(), feedSelector.getValue().getRows());
+		return rowsByFeed;
+	}
 
-		// reverse so they are in chronological order again
-		Collections.reverse(rows);
+	/**
+	 * @param rowLists Lists of rows in chronological order
+	 * @return Every row that is in any of the lists once, in chronological order
+	 */
+	private List<GoogleRow> mergeRows(Collection<List<GoogleRow>> rowLists) {
+		if (rowLists.size() == 1) return new ArrayList<>(rowLists.iterator().next());
+
+		Set<GoogleRow> mergedRows = Collections.newSetFromMap(new IdentityHashMap<GoogleRow, Boolean>());
+		for (List<GoogleRow> rowList : rowLists)
+			mergedRows.addAll(rowList);
+		List<GoogleRow> rows = new ArrayList<>(mergedRows);
+		Collections.sort(rows, new Comparator<GoogleRow>() {
+			@Override
+			public int compare(GoogleRow row1, GoogleRow row2) {
+				return ObjectUtils.compare(row1.getValue("date"), row2.getValue("date"), true);
+			}
+		});
+		return rows;
+	}
 
-		// printWorksheetRows(worksheet, rows);
+	/**
+	 * Writes one podcast feed.
+	 * 
+	 * @param feed Feed to write
+	 * @param items Messages in the feed, in chronological order
+	 * @param out Writer to write the podcast to
+	 */
+	private void writePodcast(FeedDefinition feed, List<PodcastItem> items, Writer out) throws IOException {
+		RssFeedWriter feedWriter = new RssFeedWriter(out, feed);
+		feedWriter.writeHeader();
+		for (PodcastItem item : items)
+			feedWriter.writeItem(item);
+		feedWriter.writeFooter();
+		feedWriter.flush();
+	}
 
-		outputPodcastHeader(outStream, statusStream);
-		if (statusStream != null) statusStream.println("Exporting " + rows.size() + " recent services...");
-		int index = 1;
+	/**
+	 * Looks up the size of the audio file of every row concurrently.
+	 * 
+	 * @param rows Rows that will be output in the podcast
+	 * @param statusStream Stream to write status to, <code>null</code> for none
+	 * @return Enclosure information keyed by audio URL
+	 */
+	private Map<String, Enclosure> probeEnclosures(List<GoogleRow> rows, PrintStream statusStream) {
+		List<String> audioUrls = new ArrayList<>(rows.size());
 		for (GoogleRow row : rows) {
-			if (statusStream != null) statusStream.print("  " + (index++) + ". ");
-			outputMessageItem(row, outStream, statusStream);
+			String audioUrl = row.getValue("audiolink");
+			if (!StringUtils.isBlank(audioUrl)) audioUrls.add(audioUrl);
 		}
-		outputPodcastFooter(outStream, statusStream);
 
-		return true;
+		if (statusStream != null) statusStream.println("Finding the size of " + audioUrls.size() + " audio files...");
+		if (audioUrls.isEmpty()) return new HashMap<>();
+
+		// files in S3 are sized from a bucket listing, anything else is looked up over HTTP (through the cache)
+		EnclosureResolver_Http httpResolver = new EnclosureResolver_Http(getMaximumConcurrentProbes(),
+				getProbeTimeoutSeconds() * 1000);
+		EnclosureCache cache = null;
+		EnclosureResolver_Cached cachedResolver = null;
+		EnclosureResolver resolver = httpResolver;
+		if (!isEnclosureCacheDisabled()) {
+			cache = new EnclosureCache().load();
+			cachedResolver = new EnclosureResolver_Cached(cache, httpResolver, getEnclosureCacheHours()
+					* DateUtils.MILLIS_PER_HOUR, getEnclosureFailureCacheHours() * DateUtils.MILLIS_PER_HOUR);
+			resolver = cachedResolver;
+		}
+		EnclosureResolver_S3 s3Resolver = null;
+		if (!isS3ListingDisabled() && hasS3Location(audioUrls)) {
+			s3Resolver = new EnclosureResolver_S3(getS3Helper(), resolver);
+			resolver = s3Resolver;
+		}
+
+		Map<String, Enclosure> enclosures = resolver.resolve(audioUrls);
+
+		if (cache != null) {
+			try {
+				cache.save();
+			}
+			catch (IOException e) {
+				if (statusStream != null) {
+					statusStream.println("  WARNING: Cannot save " + cache.getCacheFile() + ": " + e.getMessage());
+				}
+			}
+		}
+
+		if (statusStream != null) {
+			if (s3Resolver != null) {
+				statusStream.println("  " + s3Resolver.getLastListedCount() + " from " + s3Resolver.getLastBucketCount()
+						+ " S3 buckets, " + s3Resolver.getLastMissingCount() + " missing from S3");
+			}
+			if (cachedResolver != null) {
+				statusStream.println("  " + cachedResolver.getLastCachedCount() + " from cache, "
+						+ httpResolver.getLastNotModifiedCount() + " not modified, "
+						+ (cachedResolver.getLastRequestedCount() - httpResolver.getLastNotModifiedCount())
+						+ " looked up");
+			}
+			if (httpResolver.getLastElapsedMillis() > 0) printProbeStatistics(httpResolver, statusStream);
+		}
+		return enclosures;
+	}
+
+	/** @return <code>true</code> if any of the URLs is of a file in S3, so the S3 helper is only created when needed */
+	private static boolean hasS3Location(List<String> urls) {
+		for (String url : urls) {
+			if (S3Location.fromUrl(url) != null) return true;
+		}
+		return false;
+	}
+
+	private void printProbeStatistics(EnclosureResolver_Http resolver, PrintStream statusStream) {
+		if (statusStream == null) return;
+		long elapsedMillis = resolver.getLastElapsedMillis();
+		long serialMillis = resolver.getLastSerialMillis();
+		statusStream.print("  Probed audio files in " + elapsedMillis + " ms");
+		if (elapsedMillis > 0) {
+			statusStream.print(String.format(" (about %d ms one at a time, %.1fx faster)", serialMillis,
+					(double) serialMillis / elapsedMillis));
+		}
+		statusStream.println();
 	}
 
-	private void outputPodcastHeader(PrintStream outStream, PrintStream statusStream) {
-		outStream.println("<?xml version=\"1.0\"?>");
-		outStream.println("<rss version=\"2.0\" xmlns:atom=\"http://www.w3.org/2005/Atom\">");
-		outStream.println("  <channel>");
-		outStream.println("    <title>Word of Life Ministries: Sunday</title>");
-		outStream.println("    <link>http://www.wordoflifemn.org/</link>");
-		outStream.println("    <description>Podcast of Word of Life Ministries Sunday services</description>");
-		outStream.println("    <language>en-us</language>");
-		outStream.println("    <copyright>Copyright 2014 Word of Life Ministries</copyright>");
-		outStream.println("    <managingEditor>wordoflife.mn@gmail.com (Word of Life Ministries)</managingEditor>");
-		outStream.println("    <webMaster>kevmurray@me.com (Kevin Murray)</webMaster>");
-		outStream.println("    <category>Christian Sermon</category>");
-		outStream.println("    <ttl>60</ttl>");
-		outStream.println("    <image>");
-		outStream.println(
-				"      <url>https://s3-us-west-2.amazonaws.com/wordoflife.mn.podcast/WordofLifeMinD72aR05aP01ZL.png</url>");
-		outStream.println("      <title>Word of Life Ministries</title>");
-		outStream.println("      <link>http://www.wordoflifemn.org/</link>");
-		outStream.println("    </image>");
-		outStream.println(
-				"    <atom:link href=\"http://s3-us-west-2.amazonaws.com/wordoflife.mn.podcast/wolmn-service-podcast.rss.xml\" "
-						+ "rel=\"self\" type=\"application/rss+xml\" />");
-	}
-
-	private void outputMessageItem(GoogleRow item, PrintStream outStream, PrintStream statusStream) throws Exception {
+	/**
+	 * Collects the values of a row for its podcast item, using defaults for anything optional that is missing.
+	 */
+	private PodcastItem createPodcastItem(GoogleRow item, Map<String, Enclosure> enclosures, PrintStream statusStream)
+			throws Exception {
 		// date (use 10:00 AM)
 		Date date = item.getDateValue("date");
 		if (date == null) throw new Exception("Cannot process items without dates");
 		date = new Date(date.getTime() + (10 * DateUtils.MILLIS_PER_HOUR)); // cheesy - should use calendar
-		String dateAsString = rssFormatter.format(date);
 
 		// title
 		String title = item.getValue("name");
@@ -323,54 +934,110 @@ public class App {
 		String audioUrl = item.getValue("audiolink");
 		if (StringUtils.isBlank(audioUrl)) throw new Exception(title + " has no audio link");
 
-		Long sizeInBytes = getUrlContentLength(audioUrl);
-
-		outStream.println("    <item>");
-		outStream.println("      <title>" + StringEscapeUtils.escapeXml10(title) + "</title>");
-		outStream.println("      <description>" + StringEscapeUtils.escapeXml10(description) + "</description>");
-		outStream.println("      <author>wordoflife.mn@gmail.com (Word of Life Ministries)</author>");
-		outStream.println("      <category>Christian Sermon</category>");
-		outStream.println("      <guid>" + audioUrl + "</guid>");
-		outStream.println("      <pubDate>" + dateAsString + "</pubDate>");
-		outStream.println("      <enclosure url=\"" + audioUrl + "\" length=\""
-				+ (sizeInBytes == null ? 50000000 : sizeInBytes) + "\" type=\"audio/mpeg\" />");
-		outStream.println("    </item>");
-	}
+		Enclosure enclosure = enclosures.get(audioUrl);
+		Long sizeInBytes = enclosure == null ? null : enclosure.getLength();
+		if (enclosure != null && enclosure.isFailed() && statusStream != null) {
+			statusStream.println("      WARNING: Cannot find the size of " + audioUrl + ": " + enclosure.getFailure());
+		}
 
-	private void outputPodcastFooter(PrintStream outStream, PrintStream statusStream) {
-		outStream.println("  </channel>");
-		outStream.println("</rss>");
+		return new PodcastItem(title, description, audioUrl, date, sizeInBytes == null ? 50000000 : sizeInBytes);
 	}
 
-	private Long getUrlContentLength(String urlAddress) {
-		HttpURLConnection urlConnection = null;
-		try {
-			URL url = new URL(urlAddress);
-			urlConnection = (HttpURLConnection) url.openConnection();
-			urlConnection.setRequestMethod("HEAD");
-			urlConnection.getInputStream();
-			return (long) urlConnection.getContentLength();
-		}
-		catch (Exception e) {
-			e.printStackTrace();
-		}
-		finally {
-			if (urlConnection != null) urlConnection.disconnect();
-		}
-		return null;
+	public void uploadPodcast(File file, PrintStream statusStream) throws Exception {
+		byte[] content = Files.readAllBytes(file.toPath());
+		uploadPodcast(PODCAST_KEY, content, content.length, statusStream);
 	}
 
-	public void uploadPodcast(File file, PrintStream statusStream) throws Exception {
+	/**
+	 * Uploads the podcast to Amazon straight from memory, unless the podcast already there has the same contents.
+	 * Skipping the upload keeps the Last-Modified of the podcast stable for the clients that poll it.
+	 * 
+	 * @param podcastKey Key to upload the podcast to
+	 * @param content Buffer holding the rendered podcast
+	 * @param length Number of bytes of the buffer that hold the podcast
+	 * @param statusStream Stream to write status to, <code>null</code> for none
+	 * @return <code>true</code> if the podcast was uploaded, <code>false</code> if it was unchanged
+	 * @throws Exception
+	 */
+	public boolean uploadPodcast(String podcastKey, byte[] content, int length, PrintStream statusStream)
+			throws Exception {
 		if (statusStream != null) {
 			statusStream.println("Uploading podcast to Amazon...");
-			statusStream.println("  Uploading " + file.getAbsolutePath());
+			statusStream.println("  Uploading " + length + " bytes" + (isUploadCompressed() ? " (gzipped)" : ""));
 		}
 
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.setContentType("application/rss+xml; charset=" + PODCAST_CHARSET);
+		metadata.setCacheControl(getUploadCacheControl());
+		if (isUploadCompressed()) {
+			uploadBuffer.reset();
+			try (GZIPOutputStream gzipStream = new GZIPOutputStream(uploadBuffer)) {
+				gzipStream.write(content, 0, length);
+			}
+			content = uploadBuffer.getBuffer();
+			length = uploadBuffer.size();
+			metadata.setContentEncoding("gzip");
+		}
+
+		AwsS3Helper s3Helper = getS3Helper();
 		Bucket podcastBucket = s3Helper.getBucket(PODCAST_BUCKET_NAME);
 		if (podcastBucket == null) throw new Exception("Cannot find the podcast bucket: '" + PODCAST_BUCKET_NAME + "'");
-		s3Helper.uploadPublicFile(podcastBucket, PODCAST_KEY, file);
 
-		if (statusStream != null) statusStream.println("  Uploaded to " + PODCAST_BUCKET_NAME + ":" + PODCAST_KEY);
+		// S3 uses the MD5 of the contents as the ETag of objects that were uploaded in one piece. The MD5 of what was
+		// uploaded to the key before is remembered, so republishing an unchanged podcast does not even ask S3
+		MessageDigest digest = MessageDigest.getInstance("MD5");
+		digest.update(content, 0, length);
+		String contentMd5 = toHex(digest.digest());
+		if (!isUploadForced()) {
+			boolean unchanged = contentMd5.equals(uploadedDigests.get(podcastKey));
+			if (!unchanged) {
+				// the check only ever saves an upload: if the object cannot be looked up (S3 answers 403 rather than
+				// 404 for a missing key without s3:ListBucket), it is just uploaded
+				ObjectMetadata existing = null;
+				try {
+					existing = s3Helper.getObjectMetadata(podcastBucket, podcastKey);
+				}
+				catch (AmazonClientException e) {
+					if (statusStream != null) {
+						statusStream.println("  Cannot look up the podcast on S3, uploading it: " + e.getMessage());
+					}
+				}
+				unchanged = existing != null
+						&& contentMd5.equalsIgnoreCase(StringUtils.strip(existing.getETag(), "\""));
+			}
+			if (unchanged) {
+				uploadedDigests.put(podcastKey, contentMd5);
+				if (statusStream != null) {
+					statusStream.println("  Podcast unchanged (MD5 " + contentMd5 + "), not uploaded");
+				}
+				return false;
+			}
+		}
+
+		s3Helper.uploadPublicContent(podcastBucket, podcastKey, content, length, metadata);
+		uploadedDigests.put(podcastKey, contentMd5);
+
+		if (statusStream != null) statusStream.println("  Uploaded to " + PODCAST_BUCKET_NAME + ":" + podcastKey);
+		return true;
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+
+	/** A byte array output stream that can be reused and whose buffer can be read without copying */
+	private static class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+		public ReusableByteArrayOutputStream(int size) {
+			super(size);
+		}
+
+		/** @return The internal buffer, valid up to {@link #size()} */
+		public byte[] getBuffer() {
+			return buf;
+		}
 	}
 
 	public void printWorksheetStats(GoogleWorksheet worksheet) {
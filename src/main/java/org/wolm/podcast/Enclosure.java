@@ -0,0 +1,104 @@
+package org.wolm.podcast;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * What we know about the media file that a podcast item points to.
+ *
+ * @author wolm
+ */
+public class Enclosure {
+	@Nonnull
+	private final String url;
+	@Nullable
+	private final Long length;
+	@Nullable
+	private final String etag;
+	@Nullable
+	private final Long lastModified;
+	@Nullable
+	private final String failure;
+	private final long checkedAt;
+	private final long elapsedMillis;
+
+	/**
+	 * @param url Address of the media file
+	 * @param length Size of the file in bytes, <code>null</code> if unknown
+	 * @param failure Description of why the length could not be determined, <code>null</code> on success
+	 * @param elapsedMillis How long it took to find the information
+	 */
+	public Enclosure(@Nonnull String url, @Nullable Long length, @Nullable String failure, long elapsedMillis) {
+		this(url, length, null, null, failure, System.currentTimeMillis(), elapsedMillis);
+	}
+
+	/**
+	 * @param url Address of the media file
+	 * @param length Size of the file in bytes, <code>null</code> if unknown
+	 * @param etag ETag header the server returned for the file, <code>null</code> if none
+	 * @param lastModified Last-Modified header (in epoch milliseconds) the server returned for the file,
+	 * <code>null</code> if none
+	 * @param failure Description of why the length could not be determined, <code>null</code> on success
+	 * @param checkedAt Time (epoch milliseconds) this information was last confirmed with the server
+	 * @param elapsedMillis How long it took to find the information
+	 */
+	public Enclosure(@Nonnull String url, @Nullable Long length, @Nullable String etag, @Nullable Long lastModified,
+			@Nullable String failure, long checkedAt, long elapsedMillis) {
+		super();
+		this.url = url;
+		this.length = length;
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.failure = failure;
+		this.checkedAt = checkedAt;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	@Nonnull
+	public String getUrl() {
+		return url;
+	}
+
+	/** @return Size of the file in bytes, <code>null</code> if unknown */
+	@Nullable
+	public Long getLength() {
+		return length;
+	}
+
+	/** @return ETag the server returned for the file, <code>null</code> if none */
+	@Nullable
+	public String getEtag() {
+		return etag;
+	}
+
+	/** @return Last modification time (epoch milliseconds) the server returned for the file, <code>null</code> if none */
+	@Nullable
+	public Long getLastModified() {
+		return lastModified;
+	}
+
+	/** @return <code>true</code> if the server can be asked whether the file changed without sending it again */
+	public boolean hasValidators() {
+		return etag != null || lastModified != null;
+	}
+
+	/** @return Description of why the length could not be determined, <code>null</code> if it was found */
+	@Nullable
+	public String getFailure() {
+		return failure;
+	}
+
+	public boolean isFailed() {
+		return failure != null;
+	}
+
+	/** @return Time (epoch milliseconds) this information was last confirmed with the server */
+	public long getCheckedAt() {
+		return checkedAt;
+	}
+
+	/** @return How long it took to find the information about this enclosure */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+}
@@ -0,0 +1,150 @@
+package org.wolm.podcast;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * On-disk memory of what we learned about each enclosure URL, so that audio files that never change after upload do
+ * not have to be looked up on every run.
+ * <p>
+ * The cache is a properties file keyed by URL. Each value holds the length, ETag, Last-Modified, the time it was last
+ * confirmed and the failure (if the lookup failed), separated by tabs.
+ *
+ * @author wolm
+ */
+public class EnclosureCache {
+	private static final String FIELD_SEPARATOR = "\t";
+
+	@Nonnull
+	private final File cacheFile;
+	private final Map<String, Enclosure> enclosures = new TreeMap<>();
+	private boolean dirty = false;
+
+	/** Creates a cache in the default location, ~/.wolm/cache/enclosures.properties */
+	public EnclosureCache() {
+		this(new File(System.getenv("HOME") + "/.wolm/cache/enclosures.properties"));
+	}
+
+	public EnclosureCache(@Nonnull File cacheFile) {
+		super();
+		this.cacheFile = cacheFile;
+	}
+
+	@Nonnull
+	public File getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Reads the cache file. A missing or unreadable file just leaves the cache empty.
+	 *
+	 * @return This cache, for chaining
+	 */
+	@Nonnull
+	public EnclosureCache load() {
+		enclosures.clear();
+		dirty = false;
+		if (!cacheFile.exists()) return this;
+
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		catch (IOException e) {
+			// ignore, a broken cache just means everything gets looked up again
+			return this;
+		}
+
+		for (String url : properties.stringPropertyNames()) {
+			Enclosure enclosure = decode(url, properties.getProperty(url));
+			if (enclosure != null) enclosures.put(url, enclosure);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the cache file if anything changed since it was loaded. The file is replaced atomically so that a crash
+	 * never leaves a half-written cache.
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+		if (!dirty) return;
+
+		File directory = cacheFile.getAbsoluteFile().getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+
+		Properties properties = new Properties();
+		for (Enclosure enclosure : enclosures.values())
+			properties.setProperty(enclosure.getUrl(), encode(enclosure));
+
+		File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				properties.store(writer, "Enclosure cache: length, ETag, Last-Modified, checked at, failure");
+			}
+			Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			tempFile.delete();
+		}
+		dirty = false;
+	}
+
+	/**
+	 * @param url Address of a media file
+	 * @return Cached information about the URL, <code>null</code> if nothing is cached
+	 */
+	@Nullable
+	public Enclosure get(@Nonnull String url) {
+		return enclosures.get(url);
+	}
+
+	public void put(@Nonnull Enclosure enclosure) {
+		enclosures.put(enclosure.getUrl(), enclosure);
+		dirty = true;
+	}
+
+	public int size() {
+		return enclosures.size();
+	}
+
+	private String encode(Enclosure enclosure) {
+		StringBuilder value = new StringBuilder();
+		value.append(enclosure.getLength() == null ? "" : enclosure.getLength()).append(FIELD_SEPARATOR);
+		value.append(enclosure.getEtag() == null ? "" : enclosure.getEtag()).append(FIELD_SEPARATOR);
+		value.append(enclosure.getLastModified() == null ? "" : enclosure.getLastModified()).append(FIELD_SEPARATOR);
+		value.append(enclosure.getCheckedAt()).append(FIELD_SEPARATOR);
+		value.append(enclosure.getFailure() == null ? "" : enclosure.getFailure().replace(FIELD_SEPARATOR, " "));
+		return value.toString();
+	}
+
+	@Nullable
+	private Enclosure decode(String url, String value) {
+		String[] fields = value.split(FIELD_SEPARATOR, 5);
+		if (fields.length != 5) return null;
+		try {
+			Long length = fields[0].isEmpty() ? null : Long.valueOf(fields[0]);
+			String etag = fields[1].isEmpty() ? null : fields[1];
+			Long lastModified = fields[2].isEmpty() ? null : Long.valueOf(fields[2]);
+			long checkedAt = Long.parseLong(fields[3]);
+			String failure = fields[4].isEmpty() ? null : fields[4];
+			return new Enclosure(url, length, etag, lastModified, failure, checkedAt, 0);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
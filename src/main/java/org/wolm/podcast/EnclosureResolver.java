@@ -0,0 +1,25 @@
+package org.wolm.podcast;
+
+import java.util.Collection;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Finds the size (and other details) of the media files that podcast items point to.
+ *
+ * @author wolm
+ */
+public abstract class EnclosureResolver {
+
+	/**
+	 * Looks up every URL in the collection. Duplicate URLs are only looked up once.
+	 *
+	 * @param urls Addresses of media files
+	 * @return Information about each URL, keyed by URL and iterating in the same order as the input. Every URL will
+	 * have an entry, even if the lookup failed.
+	 */
+	@Nonnull
+	public abstract Map<String, Enclosure> resolve(@Nonnull Collection<String> urls);
+
+}
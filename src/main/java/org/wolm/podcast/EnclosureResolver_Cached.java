@@ -0,0 +1,104 @@
+package org.wolm.podcast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Answers from an {@link EnclosureCache} when it can, and asks the server otherwise.
+ * <p>
+ * Cached information that was confirmed within the time-to-live is used without contacting the server at all. Older
+ * information is revalidated with a conditional request, so an unchanged file costs a "Not Modified" answer rather
+ * than a full lookup. Failed lookups are remembered too (with their own, usually shorter, time-to-live) so that a dead
+ * link does not cost a timeout on every run.
+ * <p>
+ * Everything looked up is put back into the cache; saving the cache is up to the caller.
+ *
+ * @author wolm
+ */
+public class EnclosureResolver_Cached extends EnclosureResolver {
+
+	@Nonnull
+	private final EnclosureCache cache;
+	@Nonnull
+	private final EnclosureResolver_Http httpResolver;
+	private final long timeToLiveMillis;
+	private final long failureTimeToLiveMillis;
+
+	// statistics from the last call to resolve()
+	private int lastCachedCount = 0;
+	private int lastRequestedCount = 0;
+
+	/**
+	 * @param cache Cache to read from and update
+	 * @param httpResolver Resolver used for anything the cache cannot answer
+	 * @param timeToLiveMillis How long a successful lookup is trusted without asking the server again
+	 * @param failureTimeToLiveMillis How long a failed lookup is remembered before trying again
+	 */
+	public EnclosureResolver_Cached(@Nonnull EnclosureCache cache, @Nonnull EnclosureResolver_Http httpResolver,
+			long timeToLiveMillis, long failureTimeToLiveMillis) {
+		super();
+		this.cache = cache;
+		this.httpResolver = httpResolver;
+		this.timeToLiveMillis = timeToLiveMillis;
+		this.failureTimeToLiveMillis = failureTimeToLiveMillis;
+	}
+
+	@Override
+	@Nonnull
+	public Map<String, Enclosure> resolve(@Nonnull Collection<String> urls) {
+		long now = System.currentTimeMillis();
+
+		// split into what the cache can answer and what has to go to the server
+		Map<String, Enclosure> enclosures = new LinkedHashMap<>();
+		List<String> urlsToRequest = new ArrayList<>();
+		Map<String, Enclosure> previous = new HashMap<>();
+		for (String url : new LinkedHashSet<>(urls)) {
+			Enclosure cached = cache.get(url);
+			enclosures.put(url, cached);
+			if (cached != null && isFresh(cached, now)) continue;
+
+			urlsToRequest.add(url);
+			if (cached != null) previous.put(url, cached);
+		}
+		lastCachedCount = enclosures.size() - urlsToRequest.size();
+		lastRequestedCount = urlsToRequest.size();
+
+		if (!urlsToRequest.isEmpty()) {
+			for (Enclosure enclosure : httpResolver.resolve(urlsToRequest, previous).values()) {
+				enclosures.put(enclosure.getUrl(), enclosure);
+				cache.put(enclosure);
+			}
+		}
+		return enclosures;
+	}
+
+	/** @return Number of URLs in the last call to {@link #resolve(Collection)} answered entirely from the cache */
+	public int getLastCachedCount() {
+		return lastCachedCount;
+	}
+
+	/**
+	 * @return Number of URLs in the last call to {@link #resolve(Collection)} that needed a request, conditional or
+	 * not
+	 */
+	public int getLastRequestedCount() {
+		return lastRequestedCount;
+	}
+
+	@Nonnull
+	public EnclosureResolver_Http getHttpResolver() {
+		return httpResolver;
+	}
+
+	private boolean isFresh(Enclosure enclosure, long now) {
+		long age = now - enclosure.getCheckedAt();
+		return age >= 0 && age < (enclosure.isFailed() ? failureTimeToLiveMillis : timeToLiveMillis);
+	}
+}
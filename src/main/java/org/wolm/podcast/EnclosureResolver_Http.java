@@ -0,0 +1,221 @@
+package org.wolm.podcast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Finds enclosure sizes by sending a HEAD request to each URL. All the requests are started up front and run on a
+ * bounded number of threads, so a long podcast costs a few round trips instead of one per item.
+ * <p>
+ * The response stream of each request is closed rather than disconnected so that the JDK can hand the connection back
+ * to its keep-alive cache for the next request to the same host.
+ * <p>
+ * If the caller already knows the ETag or Last-Modified of a file, the request is made conditional so the server only
+ * has to answer "Not Modified".
+ *
+ * @author wolm
+ */
+public class EnclosureResolver_Http extends EnclosureResolver {
+
+	private final int maxConcurrentRequests;
+	private final int timeoutMillis;
+
+	// statistics from the last call to resolve()
+	private long lastElapsedMillis = 0;
+	private long lastSerialMillis = 0;
+	private int lastNotModifiedCount = 0;
+	private final AtomicInteger notModifiedCount = new AtomicInteger();
+
+	/**
+	 * @param maxConcurrentRequests Maximum number of HEAD requests that are in flight at one time
+	 * @param timeoutMillis Connect and read timeout for each request
+	 */
+	public EnclosureResolver_Http(int maxConcurrentRequests, int timeoutMillis) {
+		super();
+		this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	@Nonnull
+	public Map<String, Enclosure> resolve(@Nonnull Collection<String> urls) {
+		return resolve(urls, Collections.<String, Enclosure> emptyMap());
+	}
+
+	/**
+	 * Looks up every URL in the collection, asking the server only whether the file changed when there is previous
+	 * information about it.
+	 * 
+	 * @param urls Addresses of media files
+	 * @param previous Previously found information keyed by URL, used to make conditional requests
+	 * @return Information about each URL, keyed by URL and iterating in the same order as the input
+	 */
+	@Nonnull
+	public Map<String, Enclosure> resolve(@Nonnull Collection<String> urls,
+			@Nonnull final Map<String, Enclosure> previous) {
+		long startTime = System.currentTimeMillis();
+
+		// one request per distinct URL, remembering the order they were asked for
+		List<String> distinctUrls = new ArrayList<>(new LinkedHashSet<>(urls));
+		Map<String, Enclosure> enclosures = new LinkedHashMap<>();
+		if (distinctUrls.isEmpty()) return enclosures;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxConcurrentRequests, distinctUrls.size()),
+				new ProbeThreadFactory());
+		try {
+			List<Future<Enclosure>> futures = new ArrayList<>(distinctUrls.size());
+			for (final String url : distinctUrls) {
+				futures.add(executor.submit(new Callable<Enclosure>() {
+					public Enclosure call() {
+						return probe(url, previous.get(url));
+					}
+				}));
+			}
+
+			long serialMillis = 0;
+			notModifiedCount.set(0);
+			for (int index = 0; index < distinctUrls.size(); index++) {
+				Enclosure enclosure = waitFor(distinctUrls.get(index), futures.get(index));
+				serialMillis += enclosure.getElapsedMillis();
+				enclosures.put(enclosure.getUrl(), enclosure);
+			}
+
+			lastSerialMillis = serialMillis;
+			lastNotModifiedCount = notModifiedCount.get();
+			lastElapsedMillis = System.currentTimeMillis() - startTime;
+			return enclosures;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** @return Wall-clock time that the last call to {@link #resolve(Collection)} took */
+	public long getLastElapsedMillis() {
+		return lastElapsedMillis;
+	}
+
+	/**
+	 * @return Sum of the individual request times of the last call to {@link #resolve(Collection)}, which is about how
+	 * long the requests would have taken if they had been sent one after another
+	 */
+	public long getLastSerialMillis() {
+		return lastSerialMillis;
+	}
+
+	/**
+	 * @return Number of conditional requests in the last call to {@link #resolve(Collection, Map)} that the server
+	 * answered with "Not Modified"
+	 */
+	public int getLastNotModifiedCount() {
+		return lastNotModifiedCount;
+	}
+
+	/**
+	 * Sends a HEAD request for the URL and reads the content length from the response. If there is previous
+	 * information with validators, the request is conditional and the previous length is kept when the server says the
+	 * file has not been modified.
+	 *
+	 * @param urlAddress URL of a media file
+	 * @param previous What was previously known about the URL, <code>null</code> if nothing
+	 * @return Information about the URL. Never <code>null</code>, failures are recorded in the enclosure.
+	 */
+	@Nonnull
+	Enclosure probe(@Nonnull String urlAddress, Enclosure previous) {
+		long startTime = System.currentTimeMillis();
+		boolean conditional = previous != null && !previous.isFailed() && previous.hasValidators();
+		HttpURLConnection urlConnection = null;
+		try {
+			urlConnection = (HttpURLConnection) new URL(urlAddress).openConnection();
+			urlConnection.setRequestMethod("HEAD");
+			urlConnection.setConnectTimeout(timeoutMillis);
+			urlConnection.setReadTimeout(timeoutMillis);
+			if (conditional) {
+				if (previous.getEtag() != null) urlConnection.setRequestProperty("If-None-Match", previous.getEtag());
+				if (previous.getLastModified() != null) urlConnection.setIfModifiedSince(previous.getLastModified());
+			}
+
+			int responseCode = urlConnection.getResponseCode();
+			if (conditional && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				closeQuietly(urlConnection.getErrorStream());
+				notModifiedCount.incrementAndGet();
+				return new Enclosure(urlAddress, previous.getLength(), previous.getEtag(), previous.getLastModified(),
+						null, System.currentTimeMillis(), System.currentTimeMillis() - startTime);
+			}
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				closeQuietly(urlConnection.getErrorStream());
+				return new Enclosure(urlAddress, null, "HTTP " + responseCode, System.currentTimeMillis() - startTime);
+			}
+
+			// closing (rather than disconnecting) lets the connection be reused for the next request
+			closeQuietly(urlConnection.getInputStream());
+
+			long length = urlConnection.getContentLengthLong();
+			if (length < 0) {
+				return new Enclosure(urlAddress, null, "No content length", System.currentTimeMillis() - startTime);
+			}
+			long lastModified = urlConnection.getLastModified();
+			return new Enclosure(urlAddress, length, urlConnection.getHeaderField("ETag"),
+					lastModified == 0 ? null : lastModified, null, System.currentTimeMillis(),
+					System.currentTimeMillis() - startTime);
+		}
+		catch (Exception e) {
+			if (urlConnection != null) urlConnection.disconnect();
+			return new Enclosure(urlAddress, null, e.toString(), System.currentTimeMillis() - startTime);
+		}
+	}
+
+	private Enclosure waitFor(String url, Future<Enclosure> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Enclosure(url, null, "Interrupted", 0);
+		}
+		catch (ExecutionException e) {
+			// probe() handles its own exceptions, so this should never happen
+			return new Enclosure(url, null, String.valueOf(e.getCause()), 0);
+		}
+	}
+
+	private void closeQuietly(InputStream stream) {
+		if (stream == null) return;
+		try {
+			stream.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/** Probe threads are daemons so a stuck request can never keep the JVM alive */
+	private static class ProbeThreadFactory implements ThreadFactory {
+		private int threadCount = 0;
+
+		public synchronized Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "enclosure-probe-" + (++threadCount));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
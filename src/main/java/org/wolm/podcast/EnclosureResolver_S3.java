@@ -0,0 +1,142 @@
+package org.wolm.podcast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.wolm.aws.AwsS3Helper;
+import org.wolm.aws.S3Location;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * Finds the size of enclosures that live in S3 by listing the bucket rather than asking for each file.
+ * <p>
+ * URLs are grouped by bucket and looked up with {@link AwsS3Helper#getObjectSummaries(Bucket, Collection)}, which
+ * lists each "directory" (our audio is stored under a &lt;year&gt;/ prefix) once. A podcast of a year's worth of
+ * messages therefore costs one or two list calls instead of a request per item. URLs whose object does not exist are
+ * reported as failures, since the link is dead.
+ * <p>
+ * URLs that are not S3 URLs, and buckets whose lookup fails (no credentials, no permission to list, ...), are handed
+ * to the fallback resolver.
+ *
+ * @author wolm
+ */
+public class EnclosureResolver_S3 extends EnclosureResolver {
+
+	@Nonnull
+	private final AwsS3Helper s3Helper;
+	@Nonnull
+	private final EnclosureResolver fallbackResolver;
+
+	// statistics from the last call to resolve()
+	private int lastBucketCount = 0;
+	private int lastListedCount = 0;
+	private int lastMissingCount = 0;
+
+	/**
+	 * @param s3Helper Helper used to list the buckets
+	 * @param fallbackResolver Resolver used for URLs that cannot be answered from a listing
+	 */
+	public EnclosureResolver_S3(@Nonnull AwsS3Helper s3Helper, @Nonnull EnclosureResolver fallbackResolver) {
+		super();
+		this.s3Helper = s3Helper;
+		this.fallbackResolver = fallbackResolver;
+	}
+
+	@Override
+	@Nonnull
+	public Map<String, Enclosure> resolve(@Nonnull Collection<String> urls) {
+		Map<String, Enclosure> enclosures = new LinkedHashMap<>();
+
+		// group the S3 URLs by bucket
+		Map<String, List<String>> urlsByBucket = new LinkedHashMap<>();
+		Map<String, S3Location> locations = new HashMap<>();
+		List<String> fallbackUrls = new ArrayList<>();
+		for (String url : new LinkedHashSet<>(urls)) {
+			enclosures.put(url, null); // keeps the output in the same order as the input
+			S3Location location = S3Location.fromUrl(url);
+			if (location == null) {
+				fallbackUrls.add(url);
+				continue;
+			}
+			locations.put(url, location);
+			if (!urlsByBucket.containsKey(location.getBucketName())) {
+				urlsByBucket.put(location.getBucketName(), new ArrayList<String>());
+			}
+			urlsByBucket.get(location.getBucketName()).add(url);
+		}
+
+		// one batch lookup per bucket, which lists each directory once
+		int bucketCount = 0;
+		int listedCount = 0;
+		int missingCount = 0;
+		for (Map.Entry<String, List<String>> bucketUrls : urlsByBucket.entrySet()) {
+			List<String> keys = new ArrayList<>(bucketUrls.getValue().size());
+			for (String url : bucketUrls.getValue())
+				keys.add(locations.get(url).getKey());
+
+			long startTime = System.currentTimeMillis();
+			Map<String, S3ObjectSummary> summariesByKey;
+			try {
+				summariesByKey = s3Helper.getObjectSummaries(new Bucket(bucketUrls.getKey()), keys);
+				bucketCount++;
+			}
+			catch (AmazonClientException e) {
+				fallbackUrls.addAll(bucketUrls.getValue());
+				continue;
+			}
+			long elapsedMillis = System.currentTimeMillis() - startTime;
+
+			for (String url : bucketUrls.getValue()) {
+				S3Location location = locations.get(url);
+				S3ObjectSummary summary = summariesByKey.get(location.getKey());
+				if (summary == null) {
+					enclosures.put(url, new Enclosure(url, null, "No object " + location + " in S3", elapsedMillis));
+					missingCount++;
+				}
+				else {
+					Long lastModified = summary.getLastModified() == null ? null : summary.getLastModified().getTime();
+					enclosures.put(url, new Enclosure(url, summary.getSize(), summary.getETag(), lastModified, null,
+							System.currentTimeMillis(), elapsedMillis));
+					listedCount++;
+				}
+			}
+		}
+
+		lastBucketCount = bucketCount;
+		lastListedCount = listedCount;
+		lastMissingCount = missingCount;
+
+		if (!fallbackUrls.isEmpty()) enclosures.putAll(fallbackResolver.resolve(fallbackUrls));
+		return enclosures;
+	}
+
+	/** @return Number of buckets looked up by the last call to {@link #resolve(Collection)} */
+	public int getLastBucketCount() {
+		return lastBucketCount;
+	}
+
+	/** @return Number of URLs answered from S3 in the last call to {@link #resolve(Collection)} */
+	public int getLastListedCount() {
+		return lastListedCount;
+	}
+
+	/** @return Number of S3 URLs whose object did not exist in the last call to {@link #resolve(Collection)} */
+	public int getLastMissingCount() {
+		return lastMissingCount;
+	}
+
+	@Nonnull
+	public EnclosureResolver getFallbackResolver() {
+		return fallbackResolver;
+	}
+}
@@ -0,0 +1,212 @@
+package org.wolm.podcast;
+
+import java.text.DateFormatSymbols;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.StringUtils;
+import org.wolm.google.RowFilter;
+import org.wolm.google.RowFilterChain;
+import org.wolm.google.RowFilter_Value;
+import org.wolm.google.RowFilter_Weekday;
+
+import com.beust.jcommander.IStringConverter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.converters.IParameterSplitter;
+
+/**
+ * Describes one podcast feed: which messages go in it, how many, and where it is published.
+ * <p>
+ * On the command line a feed is written as comma-separated <code>name=value</code> pairs, for example
+ * <code>--feed key=wolmn-wednesday-podcast.rss.xml,day=Wednesday,playlist=Service,length=6,title="Word of Life
+ * Ministries: Wednesday"</code>. A value in double quotes can hold commas. Only <code>key</code> is required.
+ * <code>playlist</code> defaults to Service, <code>length</code> to 6, and leaving out <code>day</code> takes messages
+ * from any day.
+ *
+ * @author wolm
+ */
+public class FeedDefinition {
+	private static final String[] WEEKDAY_NAMES = DateFormatSymbols.getInstance(Locale.US).getWeekdays();
+
+	@Nonnull
+	private final String key;
+	@Nonnull
+	private final String title;
+	@Nonnull
+	private final String description;
+	@Nullable
+	private final String playlist;
+	@Nullable
+	private final Integer weekday;
+	private final int length;
+
+	/**
+	 * @param key S3 key (and file name) the feed is published under
+	 * @param title Title of the podcast channel
+	 * @param description Description of the podcast channel
+	 * @param playlist Playlist the messages must be in, <code>null</code> for any
+	 * @param weekday Day of the week (as a {@link Calendar#DAY_OF_WEEK}) the messages must be from, <code>null</code>
+	 * for any
+	 * @param length Maximum number of messages in the feed
+	 */
+	public FeedDefinition(@Nonnull String key, @Nonnull String title, @Nonnull String description,
+			@Nullable String playlist, @Nullable Integer weekday, int length) {
+		super();
+		this.key = key;
+		this.title = title;
+		this.description = description;
+		this.playlist = playlist;
+		this.weekday = weekday;
+		this.length = length;
+	}
+
+	/**
+	 * @param spec Feed written as comma-separated <code>name=value</code> pairs
+	 * @return The feed
+	 * @throws IllegalArgumentException if the spec cannot be understood
+	 */
+	@Nonnull
+	public static FeedDefinition parse(@Nonnull String spec) {
+		String key = null;
+		String title = null;
+		String description = null;
+		String playlist = "Service";
+		Integer weekday = null;
+		int length = 6;
+
+		for (String pair : splitPairs(spec)) {
+			if (StringUtils.isBlank(pair)) continue;
+			int equals = pair.indexOf('=');
+			if (equals < 0) throw new IllegalArgumentException("Expected name=value in feed '" + spec + "': " + pair);
+			String name = pair.substring(0, equals).trim();
+			String value = StringUtils.strip(pair.substring(equals + 1).trim(), "\"");
+
+			if (name.equals("key")) key = value;
+			else if (name.equals("title")) title = value;
+			else if (name.equals("description")) description = value;
+			else if (name.equals("playlist")) playlist = value.isEmpty() || value.equals("*") ? null : value;
+			else if (name.equals("day")) weekday = value.isEmpty() || value.equals("*") ? null : parseWeekday(value);
+			else if (name.equals("length")) {
+				try {
+					length = Integer.parseInt(value);
+				}
+				catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Length of feed '" + spec + "' is not a number: " + value);
+				}
+			}
+			else throw new IllegalArgumentException("Unknown setting '" + name + "' in feed '" + spec + "'");
+		}
+
+		if (StringUtils.isBlank(key)) throw new IllegalArgumentException("Feed '" + spec + "' has no key");
+		String kind = weekday != null ? WEEKDAY_NAMES[weekday] : playlist != null ? playlist : "All";
+		if (title == null) title = "Word of Life Ministries: " + kind;
+		if (description == null) description = "Podcast of Word of Life Ministries " + kind + " messages";
+		return new FeedDefinition(key, title, description, playlist, weekday, length);
+	}
+
+	/**
+	 * @param spec Feed written as comma-separated <code>name=value</code> pairs
+	 * @return The pairs, split at the commas that are not inside a double-quoted value
+	 * @throws IllegalArgumentException if a quote is not closed
+	 */
+	@Nonnull
+	static List<String> splitPairs(@Nonnull String spec) {
+		List<String> pairs = new ArrayList<>();
+		boolean quoted = false;
+		int start = 0;
+		for (int i = 0; i < spec.length(); i++) {
+			char c = spec.charAt(i);
+			if (c == '"') quoted = !quoted;
+			else if (c == ',' && !quoted) {
+				pairs.add(spec.substring(start, i));
+				start = i + 1;
+			}
+		}
+		if (quoted) throw new IllegalArgumentException("Unclosed quote in feed '" + spec + "'");
+		pairs.add(spec.substring(start));
+		return pairs;
+	}
+
+	/**
+	 * @param name Full English name of a day, like "Wednesday"
+	 * @return The day as a {@link Calendar#DAY_OF_WEEK}
+	 */
+	static int parseWeekday(@Nonnull String name) {
+		for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++)
+			if (WEEKDAY_NAMES[day].equalsIgnoreCase(name)) return day;
+		throw new IllegalArgumentException("Unknown day of the week: " + name);
+	}
+
+	/**
+	 * @return A new filter that keeps the rows (of those that are public and have audio) that belong in this feed. It
+	 * does not limit the number of rows: the most recent {@link #getLength()} of them go in the feed.
+	 */
+	@Nonnull
+	public RowFilterChain createRowFilter() {
+		List<RowFilter> filters = new ArrayList<>(2);
+		if (playlist != null) filters.add(new RowFilter_Value("playlist", playlist));
+		if (weekday != null) filters.add(new RowFilter_Weekday("date", weekday));
+		return new RowFilterChain(filters);
+	}
+
+	@Nonnull
+	public String getKey() {
+		return key;
+	}
+
+	@Nonnull
+	public String getTitle() {
+		return title;
+	}
+
+	@Nonnull
+	public String getDescription() {
+		return description;
+	}
+
+	@Nullable
+	public String getPlaylist() {
+		return playlist;
+	}
+
+	@Nullable
+	public Integer getWeekday() {
+		return weekday;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return key;
+	}
+
+	/** Converts a <code>--feed</code> parameter */
+	public static class Converter implements IStringConverter<FeedDefinition> {
+		@Override
+		public FeedDefinition convert(String value) {
+			try {
+				return parse(value);
+			}
+			catch (IllegalArgumentException e) {
+				throw new ParameterException(e.getMessage());
+			}
+		}
+	}
+
+	/** Keeps each <code>--feed</code> parameter whole, rather than splitting it at the commas into several feeds */
+	public static class Splitter implements IParameterSplitter {
+		@Override
+		public List<String> split(String value) {
+			return Collections.singletonList(value);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.wolm.podcast;
+
+import java.util.Date;
+
+import javax.annotation.Nonnull;
+
+/**
+ * One message in a podcast, with everything needed to write its &lt;item&gt;: already validated and with defaults
+ * filled in.
+ *
+ * @author wolm
+ */
+public class PodcastItem {
+	@Nonnull
+	private final String title;
+	@Nonnull
+	private final String description;
+	@Nonnull
+	private final String audioUrl;
+	@Nonnull
+	private final Date publishDate;
+	private final long audioLength;
+
+	public PodcastItem(@Nonnull String title, @Nonnull String description, @Nonnull String audioUrl,
+			@Nonnull Date publishDate, long audioLength) {
+		super();
+		this.title = title;
+		this.description = description;
+		this.audioUrl = audioUrl;
+		this.publishDate = publishDate;
+		this.audioLength = audioLength;
+	}
+
+	@Nonnull
+	public String getTitle() {
+		return title;
+	}
+
+	@Nonnull
+	public String getDescription() {
+		return description;
+	}
+
+	@Nonnull
+	public String getAudioUrl() {
+		return audioUrl;
+	}
+
+	@Nonnull
+	public Date getPublishDate() {
+		return publishDate;
+	}
+
+	/** @return Size of the audio file in bytes */
+	public long getAudioLength() {
+		return audioLength;
+	}
+}
@@ -0,0 +1,280 @@
+package org.wolm.podcast;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+/**
+ * Writes the RSS of the podcast.
+ * <p>
+ * The fixed parts of the feed (the channel header, the tags around each item, the footer) are assembled once into
+ * character arrays, and item values are escaped straight into a reusable buffer instead of building a string per line.
+ * The buffer is handed to the underlying writer only when it fills or on {@link #flush()}, so wrap the output in a
+ * plain (unbuffered) {@link java.io.OutputStreamWriter}.
+ * <p>
+ * The output is the same, byte for byte, as printing each line with {@link java.io.PrintStream#println(String)} and
+ * escaping values with {@link org.apache.commons.lang3.StringEscapeUtils#escapeXml10(String)}.
+ * <p>
+ * A writer is not thread safe, but it can be reused for any number of feeds with {@link #setOut(Writer)}.
+ *
+ * @author wolm
+ */
+public class RssFeedWriter implements Flushable {
+	private static final String NEWLINE = System.lineSeparator();
+
+	private static final String FEED_URL_BASE = "http://s3-us-west-2.amazonaws.com/wordoflife.mn.podcast/";
+
+	private static final char[] CHANNEL_FOOTER = lines("  </channel>", "</rss>");
+
+	private static final char[] ITEM_TITLE = ("    <item>" + NEWLINE + "      <title>").toCharArray();
+	private static final char[] ITEM_DESCRIPTION = ("</title>" + NEWLINE + "      <description>").toCharArray();
+	private static final char[] ITEM_GUID = ("</description>" + NEWLINE
+			+ "      <author>wordoflife.mn@gmail.com (Word of Life Ministries)</author>" + NEWLINE
+			+ "      <category>Christian Sermon</category>" + NEWLINE + "      <guid>").toCharArray();
+	private static final char[] ITEM_PUBLISH_DATE = ("</guid>" + NEWLINE + "      <pubDate>").toCharArray();
+	private static final char[] ITEM_ENCLOSURE_URL = ("</pubDate>" + NEWLINE + "      <enclosure url=\"").toCharArray();
+	private static final char[] ITEM_ENCLOSURE_LENGTH = "\" length=\"".toCharArray();
+	private static final char[] ITEM_END = ("\" type=\"audio/mpeg\" />" + NEWLINE + "    </item>" + NEWLINE)
+			.toCharArray();
+
+	private static final char[] QUOT = "&quot;".toCharArray();
+	private static final char[] AMP = "&amp;".toCharArray();
+	private static final char[] APOS = "&apos;".toCharArray();
+	private static final char[] LT = "&lt;".toCharArray();
+	private static final char[] GT = "&gt;".toCharArray();
+
+	private Writer out;
+	private final char[] channelHeader;
+	private final char[] buffer;
+	private int count = 0;
+
+	// RSS dates are always in English, whatever the locale of the machine generating the podcast. Not a FastDateFormat,
+	// whose parser reads the names of every time zone when it is created, which costs a short run a third of a second
+	private final SimpleDateFormat rssDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+
+	// scratch space for formatting dates and numbers
+	private final StringBuffer dateBuffer = new StringBuffer(32);
+	private final FieldPosition datePosition = new FieldPosition(0);
+	private final char[] digits = new char[20];
+
+	/**
+	 * @param out Where to write the feed
+	 * @param feed Feed being written
+	 */
+	public RssFeedWriter(@Nonnull Writer out, @Nonnull FeedDefinition feed) {
+		this(out, feed, 8 * 1024);
+	}
+
+	/**
+	 * @param out Where to write the feed
+	 * @param feed Feed being written
+	 * @param bufferSize Number of characters buffered before they are written to <code>out</code>
+	 */
+	public RssFeedWriter(@Nonnull Writer out, @Nonnull FeedDefinition feed, int bufferSize) {
+		super();
+		this.out = out;
+		this.channelHeader = createChannelHeader(feed);
+		this.buffer = new char[Math.max(bufferSize, 64)];
+	}
+
+	private static char[] createChannelHeader(FeedDefinition feed) {
+		return lines( //
+				"<?xml version=\"1.0\"?>", //
+				"<rss version=\"2.0\" xmlns:atom=\"http://www.w3.org/2005/Atom\">", //
+				"  <channel>", //
+				"    <title>" + StringEscapeUtils.escapeXml10(feed.getTitle()) + "</title>", //
+				"    <link>http://www.wordoflifemn.org/</link>", //
+				"    <description>" + StringEscapeUtils.escapeXml10(feed.getDescription()) + "</description>", //
+				"    <language>en-us</language>", //
+				"    <copyright>Copyright 2014 Word of Life Ministries</copyright>", //
+				"    <managingEditor>wordoflife.mn@gmail.com (Word of Life Ministries)</managingEditor>", //
+				"    <webMaster>kevmurray@me.com (Kevin Murray)</webMaster>", //
+				"    <category>Christian Sermon</category>", //
+				"    <ttl>60</ttl>", //
+				"    <image>", //
+				"      <url>https://s3-us-west-2.amazonaws.com/wordoflife.mn.podcast/WordofLifeMinD72aR05aP01ZL.png</url>", //
+				"      <title>Word of Life Ministries</title>", //
+				"      <link>http://www.wordoflifemn.org/</link>", //
+				"    </image>", //
+				"    <atom:link href=\"" + FEED_URL_BASE + feed.getKey() + "\" "
+						+ "rel=\"self\" type=\"application/rss+xml\" />");
+	}
+
+	private static char[] lines(String... lines) {
+		StringBuilder text = new StringBuilder();
+		for (String line : lines)
+			text.append(line).append(NEWLINE);
+		return text.toString().toCharArray();
+	}
+
+	/**
+	 * Sends the rest of the current feed to its writer and starts writing to another.
+	 *
+	 * @param out Where to write the next feed
+	 */
+	public void setOut(@Nonnull Writer out) throws IOException {
+		flushBuffer();
+		this.out = out;
+	}
+
+	public void writeHeader() throws IOException {
+		write(channelHeader);
+	}
+
+	public void writeItem(@Nonnull PodcastItem item) throws IOException {
+		write(ITEM_TITLE);
+		writeEscaped(item.getTitle());
+		write(ITEM_DESCRIPTION);
+		writeEscaped(item.getDescription());
+		write(ITEM_GUID);
+		write(item.getAudioUrl());
+		write(ITEM_PUBLISH_DATE);
+		dateBuffer.setLength(0);
+		rssDateFormat.format(item.getPublishDate(), dateBuffer, datePosition);
+		write(dateBuffer);
+		write(ITEM_ENCLOSURE_URL);
+		write(item.getAudioUrl());
+		write(ITEM_ENCLOSURE_LENGTH);
+		write(item.getAudioLength());
+		write(ITEM_END);
+	}
+
+	public void writeFooter() throws IOException {
+		write(CHANNEL_FOOTER);
+	}
+
+	/** Writes everything buffered so far and flushes the underlying writer */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count == 0) return;
+		out.write(buffer, 0, count);
+		count = 0;
+	}
+
+	/**
+	 * Writes text escaped for XML 1.0 the same way as {@link org.apache.commons.lang3.StringEscapeUtils#escapeXml10}:
+	 * the five XML entities are escaped, C1 control characters (other than NEL) become numeric references, and
+	 * characters that XML 1.0 does not allow at all (other C0 controls, unpaired surrogates, U+FFFE and U+FFFF) are
+	 * dropped.
+	 */
+	private void writeEscaped(@Nonnull String text) throws IOException {
+		int length = text.length();
+		int start = 0; // start of the run of characters that are written as they are
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c >= ' ' && c < 0x7f) {
+				if (c != '"' && c != '&' && c != '\'' && c != '<' && c != '>') continue;
+			}
+			else if (c > 0x9f && c < 0xfffe) {
+				if (!Character.isSurrogate(c)) continue;
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+					i++;
+					continue;
+				}
+			}
+			else if (c == '\t' || c == '\n' || c == '\r' || c == 0x85) continue;
+
+			write(text, start, i);
+			start = i + 1;
+			switch (c) {
+			case '"':
+				write(QUOT);
+				break;
+			case '&':
+				write(AMP);
+				break;
+			case '\'':
+				write(APOS);
+				break;
+			case '<':
+				write(LT);
+				break;
+			case '>':
+				write(GT);
+				break;
+			default:
+				if (c >= 0x7f && c <= 0x9f) {
+					write('&');
+					write('#');
+					write((long) c);
+					write(';');
+				}
+				// anything else is not allowed in XML 1.0, and is left out
+			}
+		}
+		write(text, start, length);
+	}
+
+	private void write(char c) throws IOException {
+		if (count == buffer.length) flushBuffer();
+		buffer[count++] = c;
+	}
+
+	private void write(char[] chars) throws IOException {
+		int offset = 0;
+		while (offset < chars.length) {
+			if (count == buffer.length) flushBuffer();
+			int chunk = Math.min(chars.length - offset, buffer.length - count);
+			System.arraycopy(chars, offset, buffer, count, chunk);
+			count += chunk;
+			offset += chunk;
+		}
+	}
+
+	private void write(@Nonnull String text) throws IOException {
+		write(text, 0, text.length());
+	}
+
+	private void write(@Nonnull String text, int start, int end) throws IOException {
+		while (start < end) {
+			if (count == buffer.length) flushBuffer();
+			int chunk = Math.min(end - start, buffer.length - count);
+			text.getChars(start, start + chunk, buffer, count);
+			count += chunk;
+			start += chunk;
+		}
+	}
+
+	private void write(@Nonnull StringBuffer text) throws IOException {
+		int start = 0;
+		int end = text.length();
+		while (start < end) {
+			if (count == buffer.length) flushBuffer();
+			int chunk = Math.min(end - start, buffer.length - count);
+			text.getChars(start, start + chunk, buffer, count);
+			count += chunk;
+			start += chunk;
+		}
+	}
+
+	/** Writes a number in decimal, without creating a string for it */
+	private void write(long number) throws IOException {
+		if (number < 0) {
+			write('-');
+			if (number == Long.MIN_VALUE) {
+				write(Long.toString(number).substring(1));
+				return;
+			}
+			number = -number;
+		}
+		int position = digits.length;
+		do {
+			digits[--position] = (char) ('0' + (number % 10));
+			number /= 10;
+		} while (number != 0);
+		while (position < digits.length)
+			write(digits[position++]);
+	}
+}
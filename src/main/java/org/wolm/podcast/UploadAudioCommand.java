@@ -0,0 +1,192 @@
+package org.wolm.podcast;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.wolm.aws.AwsS3Helper;
+
+import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * The "upload-audio" command: uploads message recordings to the audio bucket under a &lt;year&gt;/ prefix, readable by
+ * everyone.
+ * <p>
+ * Each file is uploaded in parts, several at a time. Progress is kept in ~/.wolm/uploads so an interrupted upload
+ * (dropped connection, closed laptop) resumes where it stopped when the command is run again.
+ *
+ * @author wolm
+ */
+@Parameters(separators = "=", commandDescription = "Upload audio files (or directories of them) to Amazon S3")
+public class UploadAudioCommand {
+	private static final String AUDIO_BUCKET_NAME = "wordoflife.mn.audio";
+	private static final List<String> AUDIO_EXTENSIONS = Arrays.asList(".mp3", ".m4a", ".wav");
+	private static final Pattern YEAR_IN_NAME = Pattern.compile("(?<!\\d)((?:19|20)\\d\\d)(?!\\d)");
+	private static final long MEGABYTE = 1024L * 1024;
+
+	/* Command Parameters */
+	@Parameter(description = "Audio files or directories containing audio files")
+	private List<String> paths = new ArrayList<>();
+
+	@Parameter(names = "--bucket", description = "Bucket to upload the audio to")
+	private String bucketName = AUDIO_BUCKET_NAME;
+
+	@Parameter(names = "--year", description = "Year prefix to upload to. If not given, the year is taken from the "
+			+ "file name (like 2021-05-02-Service.mp3) or else from the date the file was last modified.")
+	private Integer year;
+
+	@Parameter(names = "--partSize", description = "Size of each uploaded part, in megabytes (at least 5)")
+	private int partSizeInMegabytes = 16;
+
+	@Parameter(names = "--threads", description = "Number of parts uploaded at the same time")
+	private int concurrency = 4;
+
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	public void setPaths(List<String> paths) {
+		this.paths = paths;
+	}
+
+	public String getBucketName() {
+		return bucketName;
+	}
+
+	public void setBucketName(String bucketName) {
+		this.bucketName = bucketName;
+	}
+
+	public Integer getYear() {
+		return year;
+	}
+
+	public void setYear(Integer year) {
+		this.year = year;
+	}
+
+	public int getPartSizeInMegabytes() {
+		return partSizeInMegabytes;
+	}
+
+	public void setPartSizeInMegabytes(int partSizeInMegabytes) {
+		this.partSizeInMegabytes = partSizeInMegabytes;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Uploads all the audio files named by the command parameters.
+	 *
+	 * @param s3Helper Helper to upload with
+	 * @param statusStream Stream to write status to, <code>null</code> for none
+	 * @throws Exception if a file cannot be found or uploaded. Files before it have been uploaded, and the failed one
+	 * will resume when run again.
+	 */
+	public void upload(@Nonnull AwsS3Helper s3Helper, @Nullable PrintStream statusStream) throws Exception {
+		List<File> files = findAudioFiles();
+		if (files.isEmpty()) throw new Exception("No audio files to upload in " + getPaths());
+
+		Bucket bucket = s3Helper.getBucket(getBucketName());
+		if (bucket == null) throw new Exception("Cannot find the audio bucket: '" + getBucketName() + "'");
+
+		if (statusStream != null) statusStream.println("Uploading " + files.size() + " audio files to Amazon...");
+		int index = 1;
+		for (File file : files) {
+			String objectKey = getYearOf(file) + "/" + file.getName();
+			if (statusStream != null) {
+				statusStream.println("  " + (index++) + ". " + file.getName() + " (" + (file.length() / MEGABYTE)
+						+ " MB) to " + bucket.getName() + ":" + objectKey);
+			}
+
+			ObjectMetadata metadata = new ObjectMetadata();
+			metadata.setContentType(getContentType(file));
+
+			long startTime = System.currentTimeMillis();
+			s3Helper.uploadPublicFileInParts(bucket, objectKey, file, metadata, getPartSizeInMegabytes() * MEGABYTE,
+					getConcurrency(), getManifestFile(bucket, objectKey));
+			long elapsedMillis = Math.max(1, System.currentTimeMillis() - startTime);
+
+			if (statusStream != null) {
+				statusStream.println(String.format("      Uploaded in %.1f s (%.2f MB/s)", elapsedMillis / 1000.0,
+						(file.length() / (double) MEGABYTE) / (elapsedMillis / 1000.0)));
+			}
+		}
+	}
+
+	/** @return All audio files named directly, or found (recursively) in the named directories, in name order */
+	@Nonnull
+	List<File> findAudioFiles() throws FileNotFoundException {
+		List<File> files = new ArrayList<>();
+		for (String path : getPaths()) {
+			File file = new File(path);
+			if (!file.exists()) throw new FileNotFoundException(file.getAbsolutePath());
+			if (file.isDirectory()) addAudioFiles(file, files);
+			else files.add(file);
+		}
+		return files;
+	}
+
+	private void addAudioFiles(File directory, List<File> files) {
+		File[] children = directory.listFiles();
+		if (children == null) return;
+		Arrays.sort(children);
+		List<File> subdirectories = new ArrayList<>();
+		for (File child : children) {
+			if (child.isDirectory()) subdirectories.add(child);
+			else if (isAudioFile(child)) files.add(child);
+		}
+		for (File subdirectory : subdirectories)
+			addAudioFiles(subdirectory, files);
+	}
+
+	private boolean isAudioFile(File file) {
+		String name = file.getName().toLowerCase();
+		for (String extension : AUDIO_EXTENSIONS)
+			if (name.endsWith(extension)) return true;
+		return false;
+	}
+
+	/** @return The year prefix for the file: from the command line, its name, or when it was last modified */
+	int getYearOf(@Nonnull File file) {
+		if (getYear() != null) return getYear();
+
+		Matcher matcher = YEAR_IN_NAME.matcher(file.getName());
+		if (matcher.find()) return Integer.parseInt(matcher.group(1));
+
+		Calendar lastModified = Calendar.getInstance();
+		lastModified.setTimeInMillis(file.lastModified());
+		return lastModified.get(Calendar.YEAR);
+	}
+
+	private String getContentType(File file) {
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".m4a")) return "audio/mp4";
+		if (name.endsWith(".wav")) return "audio/wav";
+		return "audio/mpeg";
+	}
+
+	private File getManifestFile(Bucket bucket, String objectKey) {
+		return new File(System.getenv("HOME") + "/.wolm/uploads/" + bucket.getName() + "_"
+				+ objectKey.replaceAll("[^A-Za-z0-9._-]", "_") + ".properties");
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.wolm.aws;
+
+import static org.fest.assertions.Assertions.*;
+
+import org.junit.Test;
+
+public class S3LocationTest {
+
+	@Test
+	public void shouldParsePathStyleUrls() {
+		// when
+		S3Location location = S3Location
+				.fromUrl("https://s3-us-west-2.amazonaws.com/wordoflife.mn.audio/2021/2021-05-02%20Service.mp3");
+
+		// then
+		assertThat(location).isNotNull();
+		assert location != null;
+		assertThat(location.getBucketName()).isEqualTo("wordoflife.mn.audio");
+		assertThat(location.getKey()).isEqualTo("2021/2021-05-02 Service.mp3");
+		assertThat(location.getKeyPrefix()).isEqualTo("2021/");
+	}
+
+	@Test
+	public void shouldParseVirtualHostedUrls() {
+		// when
+		S3Location location = S3Location.fromUrl("http://wordoflife.mn.audio.s3.amazonaws.com/2014/service.mp3");
+
+		// then
+		assertThat(location).isNotNull();
+		assert location != null;
+		assertThat(location.getBucketName()).isEqualTo("wordoflife.mn.audio");
+		assertThat(location.getKey()).isEqualTo("2014/service.mp3");
+	}
+
+	@Test
+	public void shouldIgnoreOtherUrls() {
+		assertThat(S3Location.fromUrl("http://www.wordoflifemn.org/2014/service.mp3")).isNull();
+		assertThat(S3Location.fromUrl("https://s3.amazonaws.com/just-a-bucket/")).isNull();
+		assertThat(S3Location.fromUrl("not a url")).isNull();
+		assertThat(S3Location.fromUrl(null)).isNull();
+	}
+}
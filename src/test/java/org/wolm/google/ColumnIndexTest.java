@@ -0,0 +1,74 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+public class ColumnIndexTest {
+	private static final String[] VISIBILITIES = { "Public", "Private", "Public-ish", null };
+	private static final String[] PLAYLISTS = { "Service", "Bible Study", "Special", null };
+
+	@Test
+	public void shouldFindRowsByValueAndPrefix() {
+		// given
+		List<GoogleRow> rows = createRows(1000);
+		ColumnIndex index = ColumnIndex.build(rows, "visibility");
+
+		// when
+		BitSet publicRows = index.getRowsEqualTo("Public");
+		BitSet publicishRows = index.getRowsStartingWith("Public");
+
+		// then
+		assertThat(index.getDistinctValueCount()).isEqualTo(3);
+		for (int i = 0; i < rows.size(); i++) {
+			String visibility = rows.get(i).getValue("visibility");
+			assertThat(index.getValue(i)).isEqualTo(visibility);
+			assertThat(publicRows.get(i)).isEqualTo("Public".equals(visibility));
+			assertThat(publicishRows.get(i)).isEqualTo(visibility != null && visibility.startsWith("Public"));
+		}
+		assertThat(index.getRowsEqualTo("Nobody").isEmpty()).isTrue();
+		assertThat(index.getMemoryFootprint()).isGreaterThanOrEqualTo(1000 * 4);
+	}
+
+	@Test
+	public void shouldFilterIndexedWorksheetLikeScanning() throws Exception {
+		// given
+		GoogleWorksheet worksheet = new GoogleWorksheet(null, null);
+		worksheet.rows = createRows(1000);
+		RowFilterChain filter = new RowFilterChain(new RowFilter_Value("visibility", "Public"), new RowFilter_Value(
+				"playlist", "Service"), new RowFilter_MaxCount(50));
+		List<GoogleRow> scanned = RowFilter.filter(worksheet.getRows(), filter);
+
+		// when
+		worksheet.indexColumns("visibility", "playlist");
+
+		// then
+		assertThat(filter.selectCandidates(worksheet)).isNotNull();
+		assertThat(worksheet.getRows(filter)).isEqualTo(scanned);
+		assertThat(worksheet.getIndexMemoryFootprint()).isGreaterThanOrEqualTo(2 * 1000 * 4);
+
+		worksheet.refresh();
+		assertThat(worksheet.getColumnIndex("visibility")).isNull();
+	}
+
+	private List<GoogleRow> createRows(int count) {
+		Random random = new Random(7);
+		List<GoogleRow> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			ListEntry entry = new ListEntry();
+			String visibility = VISIBILITIES[random.nextInt(VISIBILITIES.length)];
+			String playlist = PLAYLISTS[random.nextInt(PLAYLISTS.length)];
+			if (visibility != null) entry.getCustomElements().setValueLocal("visibility", visibility);
+			if (playlist != null) entry.getCustomElements().setValueLocal("playlist", playlist);
+			rows.add(new GoogleRow(null, entry));
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,94 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+public class ColumnKeysTest {
+
+	@Test
+	public void shouldConvertDatesToEpochDays() {
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		calendar.clear();
+		calendar.set(1899, Calendar.DECEMBER, 25);
+		for (int i = 0; i < 80000; i++) {
+			String date = calendar.get(Calendar.YEAR) + "-" + (calendar.get(Calendar.MONTH) + 1) + "-"
+					+ calendar.get(Calendar.DAY_OF_MONTH);
+			assertThat(ColumnKeys.toEpochDay(date)).isEqualTo(calendar.getTimeInMillis() / (24 * 60 * 60 * 1000));
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+		}
+
+		assertThat(ColumnKeys.toEpochDay("2014-02-29")).isNull();
+		assertThat(ColumnKeys.toEpochDay("2014-13-01")).isNull();
+		assertThat(ColumnKeys.toEpochDay("Sunday")).isNull();
+	}
+
+	@Test
+	public void shouldTypeColumnsByTheirValues() {
+		// given
+		List<GoogleRow> rows = createRows("date", "2014-1-5", null, "2013-12-29");
+		List<GoogleRow> numbers = createRows("age", "10", "9.5", null, "-1");
+		List<GoogleRow> texts = createRows("age", "10", "nine");
+
+		// then
+		assertThat(ColumnKeys.extract(rows, "date").getType()).isEqualTo(ColumnKeys.Type.DATE);
+		assertThat(ColumnKeys.extract(numbers, "age").getType()).isEqualTo(ColumnKeys.Type.NUMBER);
+		assertThat(ColumnKeys.extract(texts, "age").getType()).isEqualTo(ColumnKeys.Type.TEXT);
+	}
+
+	@Test
+	public void shouldOrderByTypedKeysWithEmptyCellsLast() {
+		// given
+		List<GoogleRow> rows = createRows("age", "10", null, "9.5", "10", "-1");
+		ColumnKeys keys = ColumnKeys.extract(rows, "age");
+
+		// then equal keys keep their order in both directions
+		assertThat(toList(keys.getOrder(true))).isEqualTo(Arrays.asList(4, 2, 0, 3, 1));
+		assertThat(toList(keys.getOrder(false))).isEqualTo(Arrays.asList(1, 0, 3, 2, 4));
+		assertThat(keys.getOrder(true)).isSameAs(keys.getOrder(true));
+	}
+
+	@Test
+	public void shouldLeaveTheWorksheetRowsInTheirOrder() throws Exception {
+		// given
+		GoogleWorksheet worksheet = new GoogleWorksheet(null, null);
+		worksheet.rows = createRows("date", "2014-01-12", "2014-01-05", "2014-01-19");
+
+		// when
+		List<GoogleRow> ordered = worksheet.getRowsOrderedBy("date", false);
+
+		// then
+		assert ordered != null;
+		assertThat(ordered.get(0).getValue("id")).isEqualTo("2");
+		assertThat(ordered.get(1).getValue("id")).isEqualTo("0");
+		assertThat(ordered.get(2).getValue("id")).isEqualTo("1");
+		assertThat(worksheet.getRows().get(0).getValue("id")).isEqualTo("0");
+		assertThat(worksheet.getColumnKeys("date")).isSameAs(worksheet.getColumnKeys("date"));
+	}
+
+	private List<GoogleRow> createRows(String columnName, String... values) {
+		List<GoogleRow> rows = new ArrayList<>();
+		for (int i = 0; i < values.length; i++) {
+			ListEntry entry = new ListEntry();
+			entry.getCustomElements().setValueLocal("id", Integer.toString(i));
+			if (values[i] != null) entry.getCustomElements().setValueLocal(columnName, values[i]);
+			rows.add(new GoogleRow(null, entry));
+		}
+		return rows;
+	}
+
+	private List<Integer> toList(int[] values) {
+		List<Integer> list = new ArrayList<>(values.length);
+		for (int value : values)
+			list.add(value);
+		return list;
+	}
+}
@@ -0,0 +1,85 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.gdata.util.ServiceException;
+
+public class GoogleSpreadsheetTest {
+
+	@Test
+	public void shouldLoadWorksheetsAtTheSameTime() throws Exception {
+		// given three worksheets that each wait until all three are loading
+		CountDownLatch loading = new CountDownLatch(3);
+		FakeWorksheet first = new FakeWorksheet(loading, false);
+		FakeWorksheet second = new FakeWorksheet(loading, false);
+		FakeWorksheet third = new FakeWorksheet(loading, false);
+
+		// when
+		Map<GoogleWorksheet, Exception> failures = new GoogleSpreadsheet(null, null).loadRows(
+				Arrays.<GoogleWorksheet> asList(first, second, third), 3);
+
+		// then
+		assertThat(failures).isEmpty();
+		for (FakeWorksheet worksheet : Arrays.asList(first, second, third)) {
+			assertThat(worksheet.overlapped).isTrue();
+			assertThat(worksheet.getRows()).isSameAs(worksheet.rows);
+		}
+	}
+
+	@Test
+	public void shouldReportFailuresPerWorksheet() throws Exception {
+		// given
+		FakeWorksheet good = new FakeWorksheet(null, false);
+		FakeWorksheet bad = new FakeWorksheet(null, true);
+		FakeWorksheet alsoGood = new FakeWorksheet(null, false);
+
+		// when
+		Map<GoogleWorksheet, Exception> failures = new GoogleSpreadsheet(null, null).loadRows(
+				Arrays.<GoogleWorksheet> asList(good, bad, alsoGood), 2);
+
+		// then
+		assertThat(failures).hasSize(1);
+		assertThat(failures.get(bad)).isInstanceOf(IOException.class);
+		assertThat(good.rows).isNotNull();
+		assertThat(alsoGood.rows).isNotNull();
+	}
+
+	private static class FakeWorksheet extends GoogleWorksheet {
+		private final CountDownLatch loading;
+		private final boolean failing;
+		volatile boolean overlapped = false;
+
+		FakeWorksheet(CountDownLatch loading, boolean failing) {
+			super(null, null);
+			this.loading = loading;
+			this.failing = failing;
+		}
+
+		@Override
+		public List<GoogleRow> getRows() throws IOException, ServiceException {
+			if (rows != null) return rows;
+			if (failing) throw new IOException("Worksheet is gone");
+			if (loading != null) {
+				loading.countDown();
+				try {
+					overlapped = loading.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			rows = new ArrayList<>();
+			return rows;
+		}
+	}
+}
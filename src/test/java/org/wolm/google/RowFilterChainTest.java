@@ -0,0 +1,83 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+public class RowFilterChainTest {
+
+	@Test
+	public void shouldKeepRowsThatPassEveryFilter() {
+		// given
+		List<GoogleRow> rows = createRows("Public", "Private", "Public", "Public");
+		RowFilterChain chain = new RowFilterChain(new RowFilter_Value("visibility", "Public"),
+				new RowFilter_ValueStartsWith("name", "Message"));
+
+		// when
+		List<GoogleRow> kept = RowFilter.filter(rows, chain);
+
+		// then
+		assertThat(kept.size()).isEqualTo(3);
+		assertThat(kept.get(0).getValue("name")).isEqualTo("Message 0");
+		assertThat(kept.get(1).getValue("name")).isEqualTo("Message 2");
+		assertThat(kept.get(2).getValue("name")).isEqualTo("Message 3");
+	}
+
+	@Test
+	public void shouldStopScanningWhenTheCountIsReached() {
+		// given
+		List<GoogleRow> rows = createRows("Public", "Private", "Public", "Public", "Public");
+		CountingFilter counter = new CountingFilter();
+		RowFilterChain chain = new RowFilterChain(counter, new RowFilter_Value("visibility", "Public"),
+				new RowFilter_MaxCount(2));
+
+		// when
+		Iterator<GoogleRow> kept = chain.apply(rows).iterator();
+
+		// then nothing is read until asked for, and the scan stops at the second public row
+		assertThat(counter.count).isEqualTo(0);
+		assertThat(kept.next().getValue("name")).isEqualTo("Message 0");
+		assertThat(kept.next().getValue("name")).isEqualTo("Message 2");
+		assertThat(kept.hasNext()).isFalse();
+		assertThat(counter.count).isEqualTo(3);
+	}
+
+	@Test
+	public void shouldReuseMaxCountFilters() {
+		// given
+		List<GoogleRow> rows = createRows("Public", "Public", "Public");
+		RowFilter_MaxCount maxCount = new RowFilter_MaxCount(2);
+
+		// then each pass keeps the first two
+		assertThat(RowFilter.filter(rows, maxCount).size()).isEqualTo(2);
+		assertThat(RowFilter.filter(rows, maxCount).size()).isEqualTo(2);
+		assertThat(RowFilter.filter(rows, new RowFilterChain(maxCount)).size()).isEqualTo(2);
+	}
+
+	private List<GoogleRow> createRows(String... visibilities) {
+		List<GoogleRow> rows = new ArrayList<>();
+		for (int i = 0; i < visibilities.length; i++) {
+			ListEntry entry = new ListEntry();
+			entry.getCustomElements().setValueLocal("name", "Message " + i);
+			entry.getCustomElements().setValueLocal("visibility", visibilities[i]);
+			rows.add(new GoogleRow(null, entry));
+		}
+		return rows;
+	}
+
+	private static class CountingFilter extends RowFilter {
+		int count = 0;
+
+		@Override
+		public boolean keepRow(GoogleRow row) {
+			count++;
+			return true;
+		}
+	}
+}
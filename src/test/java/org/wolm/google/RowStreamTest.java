@@ -0,0 +1,132 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gdata.data.spreadsheet.ListEntry;
+import com.google.gdata.util.ServiceException;
+
+public class RowStreamTest {
+
+	@Test
+	public void shouldReadAllRowsPageByPage() {
+		// given
+		FakePageSource source = new FakePageSource(45);
+		RowStream stream = new RowStream(null, source, 10);
+
+		// when
+		List<String> ids = new ArrayList<>();
+		for (GoogleRow row : stream)
+			ids.add(row.getValue("id"));
+
+		// then
+		assertThat(ids).hasSize(45);
+		for (int i = 0; i < ids.size(); i++)
+			assertThat(ids.get(i)).isEqualTo(Integer.toString(i + 1));
+		assertThat(source.getStartIndexes()).isEqualTo(asList(1, 11, 21, 31, 41));
+	}
+
+	@Test
+	public void shouldStopAfterAFullLastPage() {
+		// given
+		FakePageSource source = new FakePageSource(20);
+
+		// when
+		int count = 0;
+		for (@SuppressWarnings("unused")
+		GoogleRow row : new RowStream(null, source, 10))
+			count++;
+
+		// then the empty page after the full one ends the stream
+		assertThat(count).isEqualTo(20);
+		assertThat(source.getStartIndexes()).isEqualTo(asList(1, 11, 21));
+	}
+
+	@Test
+	public void shouldOnlyReadAheadOnePageWhenStoppedEarly() throws Exception {
+		// given
+		FakePageSource source = new FakePageSource(1000);
+		RowFilterChain filter = new RowFilterChain(new RowFilter_MaxCount(15));
+
+		// when
+		int count = 0;
+		for (@SuppressWarnings("unused")
+		GoogleRow row : filter.apply(new RowStream(null, source, 10)))
+			count++;
+
+		// then
+		assertThat(count).isEqualTo(15);
+		Thread.sleep(100);
+		assertThat(source.getStartIndexes().size()).isLessThanOrEqualTo(3);
+	}
+
+	@Test(expected = RowStream.PageException.class)
+	public void shouldReportPagesThatCannotBeRead() {
+		// given
+		FakePageSource source = new FakePageSource(45);
+		source.failAt = 21;
+
+		// when
+		for (Iterator<GoogleRow> rows = new RowStream(null, source, 10).iterator(); rows.hasNext();)
+			rows.next();
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldReportPagesThatCannotBeReadAsIOExceptionWhenSelectingTopRows() throws Exception {
+		// given
+		final FakePageSource source = new FakePageSource(45);
+		source.failAt = 21;
+		GoogleWorksheet worksheet = new GoogleWorksheet(null, null) {
+			@Override
+			protected Iterable<GoogleRow> scanRows() {
+				return new RowStream(this, source, 10);
+			}
+		};
+
+		// when
+		worksheet.getTopRowsOrderedBy("id", null, 5);
+	}
+
+	private List<Integer> asList(Integer... values) {
+		List<Integer> list = new ArrayList<>();
+		Collections.addAll(list, values);
+		return list;
+	}
+
+	private static class FakePageSource implements RowStream.PageSource {
+		private final int rowCount;
+		private final List<Integer> startIndexes = new ArrayList<>();
+		int failAt = -1;
+
+		FakePageSource(int rowCount) {
+			this.rowCount = rowCount;
+		}
+
+		synchronized List<Integer> getStartIndexes() {
+			return new ArrayList<>(startIndexes);
+		}
+
+		@Override
+		public List<ListEntry> getPage(int startIndex, int maxResults) throws IOException, ServiceException {
+			synchronized (this) {
+				startIndexes.add(startIndex);
+			}
+			if (startIndex == failAt) throw new IOException("Connection reset");
+
+			List<ListEntry> page = new ArrayList<>();
+			for (int i = startIndex; i < startIndex + maxResults && i <= rowCount; i++) {
+				ListEntry entry = new ListEntry();
+				entry.getCustomElements().setValueLocal("id", Integer.toString(i));
+				page.add(entry);
+			}
+			return page;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+
+public class TokenStoreTest {
+	private File tokenFile;
+
+	@Before
+	public void beforeEachTest() throws Exception {
+		tokenFile = File.createTempFile("google-token", ".properties");
+		tokenFile.delete();
+	}
+
+	@After
+	public void afterEachTest() {
+		tokenFile.delete();
+	}
+
+	@Test
+	public void shouldReuseSavedToken() throws Exception {
+		// given
+		long expirationTime = System.currentTimeMillis() + 60 * 60 * 1000;
+		new TokenStore(tokenFile, "account@example.com").save(createCredential("token-1", expirationTime));
+
+		// when
+		Credential credential = createCredential(null, null);
+		boolean restored = new TokenStore(tokenFile, "account@example.com").restore(credential);
+
+		// then
+		assertThat(restored).isTrue();
+		assertThat(credential.getAccessToken()).isEqualTo("token-1");
+		assertThat(credential.getExpirationTimeMilliseconds()).isEqualTo(expirationTime);
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath()))).isEqualTo(
+					"rw-------");
+		}
+	}
+
+	@Test
+	public void shouldNotReuseTokensOfOtherAccountsOrAboutToExpire() throws Exception {
+		// given
+		TokenStore store = new TokenStore(tokenFile, "account@example.com");
+		assertThat(store.restore(createCredential(null, null))).isFalse();
+
+		// when
+		store.save(createCredential("token-1", System.currentTimeMillis() + 60 * 60 * 1000));
+
+		// then
+		assertThat(new TokenStore(tokenFile, "other@example.com").restore(createCredential(null, null))).isFalse();
+
+		// when
+		store.save(createCredential("token-2", System.currentTimeMillis() + 60 * 1000));
+
+		// then
+		assertThat(store.restore(createCredential(null, null))).isFalse();
+	}
+
+	@Test
+	public void shouldForgetTokenThatWasRefused() throws Exception {
+		// given
+		TokenStore store = new TokenStore(tokenFile, "account@example.com");
+		store.save(createCredential("token-1", System.currentTimeMillis() + 60 * 60 * 1000));
+
+		// when
+		store.onTokenErrorResponse(createCredential(null, null), null);
+
+		// then
+		assertThat(tokenFile.exists()).isFalse();
+	}
+
+	@Test
+	public void shouldNotFailRefreshWhenTokenCannotBeSaved() throws Exception {
+		// given
+		File notADirectory = File.createTempFile("google-token", ".dir");
+		TokenStore store = new TokenStore(new File(notADirectory, "google-token.properties"), "account@example.com");
+
+		try {
+			// when
+			store.onTokenResponse(createCredential("token-1", System.currentTimeMillis() + 60 * 60 * 1000), null);
+
+			// then
+			assertThat(store.getTokenFile().exists()).isFalse();
+		}
+		finally {
+			notADirectory.delete();
+		}
+	}
+
+	private Credential createCredential(String accessToken, Long expirationTime) {
+		Credential credential = new Credential(BearerToken.authorizationHeaderAccessMethod());
+		credential.setAccessToken(accessToken);
+		credential.setExpirationTimeMilliseconds(expirationTime);
+		return credential;
+	}
+}
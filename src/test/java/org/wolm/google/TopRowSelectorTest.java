@@ -0,0 +1,83 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.junit.Test;
+
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+public class TopRowSelectorTest {
+
+	@Test
+	public void shouldSelectTheMostRecentRowsInChronologicalOrder() {
+		// given
+		List<GoogleRow> rows = new ArrayList<>();
+		rows.add(createRow(0, "2014-01-12"));
+		rows.add(createRow(1, "2014-01-05"));
+		rows.add(createRow(2, "2014-01-26"));
+		rows.add(createRow(3, "2014-01-19"));
+		TopRowSelector selector = new TopRowSelector("date", 3);
+
+		// when
+		for (GoogleRow row : rows)
+			selector.offer(row);
+
+		// then
+		List<GoogleRow> selected = selector.getRows();
+		assertThat(selected.size()).isEqualTo(3);
+		assertThat(selected.get(0).getValue("id")).isEqualTo("0");
+		assertThat(selected.get(1).getValue("id")).isEqualTo("3");
+		assertThat(selected.get(2).getValue("id")).isEqualTo("2");
+	}
+
+	@Test
+	public void shouldSelectTheSameRowsAsSortingDescendingAndReversing() {
+		Random random = new Random(42);
+		for (int trial = 0; trial < 200; trial++) {
+			// given lots of duplicate dates, and some rows without one
+			List<GoogleRow> rows = new ArrayList<>();
+			int rowCount = random.nextInt(60);
+			for (int i = 0; i < rowCount; i++) {
+				String date = random.nextInt(10) == 0 ? null : "2014-01-" + (10 + random.nextInt(15));
+				rows.add(createRow(i, date));
+			}
+			int count = random.nextInt(12);
+
+			// when
+			TopRowSelector selector = new TopRowSelector("date", count);
+			for (GoogleRow row : rows)
+				selector.offer(row);
+
+			// then
+			assertThat(selector.getRows()).isEqualTo(sortDescendingTakeAndReverse(rows, count));
+		}
+	}
+
+	/** How the podcast used to pick its rows */
+	private List<GoogleRow> sortDescendingTakeAndReverse(List<GoogleRow> rows, int count) {
+		List<GoogleRow> sorted = new ArrayList<>(rows);
+		Collections.sort(sorted, new Comparator<GoogleRow>() {
+			@Override
+			public int compare(GoogleRow row1, GoogleRow row2) {
+				return -ObjectUtils.compare(row1.getValue("date"), row2.getValue("date"), true);
+			}
+		});
+		List<GoogleRow> taken = new ArrayList<>(sorted.subList(0, Math.min(count, sorted.size())));
+		Collections.reverse(taken);
+		return taken;
+	}
+
+	private GoogleRow createRow(int id, String date) {
+		ListEntry entry = new ListEntry();
+		entry.getCustomElements().setValueLocal("id", Integer.toString(id));
+		if (date != null) entry.getCustomElements().setValueLocal("date", date);
+		return new GoogleRow(null, entry);
+	}
+}
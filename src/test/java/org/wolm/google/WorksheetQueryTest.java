@@ -0,0 +1,80 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gdata.client.spreadsheet.ListQuery;
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+public class WorksheetQueryTest {
+
+	@Test
+	public void shouldTranslateLeadingValueFilters() {
+		// given
+		RowFilterChain filter = new RowFilterChain(new RowFilter_Value("visibility", "Public"), new RowFilter_Value(
+				"playlist", "Bible Study"), new RowFilter_ValueStartsWith("audiolink", "http"), new RowFilter_Value(
+				"speaker", "Pastor"));
+
+		// then translation stops at the first filter that cannot be translated
+		assertThat(new WorksheetQuery(filter).getStructuredQuery()).isEqualTo(
+				"visibility = \"Public\" and playlist = \"Bible Study\"");
+	}
+
+	@Test
+	public void shouldLeaveUntranslatableFiltersToTheClient() {
+		assertThat(new WorksheetQuery(null).getStructuredQuery()).isNull();
+		assertThat(new WorksheetQuery(new RowFilter_Value("date", "2014-01-05")).getStructuredQuery()).isNull();
+		assertThat(new WorksheetQuery(new RowFilter_Value("name", "The \"Word\"")).getStructuredQuery()).isNull();
+		assertThat(new WorksheetQuery(new RowFilter_Value("two words", "x")).getStructuredQuery()).isNull();
+		assertThat(new WorksheetQuery(new RowFilter_MaxCount(5)).getStructuredQuery()).isNull();
+	}
+
+	@Test
+	public void shouldBuildTheListFeedQuery() throws Exception {
+		// given
+		WorksheetQuery query = new WorksheetQuery(new RowFilter_Value("visibility", "Public")).orderBy("date", false)
+				.select("name", "visibility");
+
+		// when
+		ListQuery listQuery = query.toListQuery(new URL("https://example.com/list/key/od6"));
+
+		// then
+		assertThat(listQuery.getSpreadsheetQuery()).isEqualTo("visibility = \"Public\"");
+		assertThat(listQuery.getOrderBy()).isEqualTo("column:date");
+		assertThat(listQuery.isReverse()).isTrue();
+		assertThat(listQuery.getFields()).isEqualTo("entry(id,gsx:name,gsx:visibility,gsx:date)");
+	}
+
+	@Test
+	public void shouldFilterAndOrderRowsAlreadyRead() throws Exception {
+		// given
+		GoogleWorksheet worksheet = new GoogleWorksheet(null, null);
+		worksheet.rows = new ArrayList<>();
+		worksheet.rows.add(createRow("2014-01-05", "Public"));
+		worksheet.rows.add(createRow("2014-01-19", "Private"));
+		worksheet.rows.add(createRow("2014-01-12", "Public"));
+		worksheet.rows.add(createRow("2014-01-26", "Public"));
+		WorksheetQuery query = new WorksheetQuery(new RowFilterChain(new RowFilter_Value("visibility", "Public"),
+				new RowFilter_MaxCount(2))).orderBy("date", false);
+
+		// when
+		List<GoogleRow> rows = worksheet.getRows(query);
+
+		// then the two most recent public rows
+		assertThat(rows).hasSize(2);
+		assertThat(rows.get(0).getValue("date")).isEqualTo("2014-01-26");
+		assertThat(rows.get(1).getValue("date")).isEqualTo("2014-01-12");
+	}
+
+	private GoogleRow createRow(String date, String visibility) {
+		ListEntry entry = new ListEntry();
+		entry.getCustomElements().setValueLocal("date", date);
+		entry.getCustomElements().setValueLocal("visibility", visibility);
+		return new GoogleRow(null, entry);
+	}
+}
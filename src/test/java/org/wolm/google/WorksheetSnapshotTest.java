@@ -0,0 +1,143 @@
+package org.wolm.google;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+public class WorksheetSnapshotTest {
+	private File snapshotFile;
+
+	@Before
+	public void beforeEachTest() throws Exception {
+		snapshotFile = File.createTempFile("worksheet", ".rows");
+		snapshotFile.delete();
+	}
+
+	@After
+	public void afterEachTest() {
+		snapshotFile.delete();
+	}
+
+	@Test
+	public void shouldReadBackTheRowsOfTheSameVersion() throws Exception {
+		// given
+		List<ListEntry> entries = new ArrayList<>();
+		entries.add(createEntry("row/1", "date", "2014-01-05", "name", "Grace — été", "notes", "",
+				"audiolink", null));
+		entries.add(createEntry("row/2", "date", "2014-01-12", "name", "Faith"));
+		entries.add(createEntry(null, "other", "x"));
+		new WorksheetSnapshot(snapshotFile).write("W/\"abc\" 2014-01-12T10:00:00.000Z", null, entries);
+
+		// when
+		List<ListEntry> read = new WorksheetSnapshot(snapshotFile).read("W/\"abc\" 2014-01-12T10:00:00.000Z");
+
+		// then
+		assert read != null;
+		assertThat(read).hasSize(3);
+		for (int i = 0; i < entries.size(); i++) {
+			assertThat(read.get(i).getId()).isEqualTo(entries.get(i).getId());
+			assertThat(read.get(i).getCustomElements().getTags()).isEqualTo(
+					entries.get(i).getCustomElements().getTags());
+			for (String tag : entries.get(i).getCustomElements().getTags()) {
+				assertThat(read.get(i).getCustomElements().getValue(tag)).isEqualTo(
+						entries.get(i).getCustomElements().getValue(tag));
+			}
+		}
+	}
+
+	@Test
+	public void shouldIgnoreSnapshotsOfOtherVersions() throws Exception {
+		// given
+		WorksheetSnapshot snapshot = new WorksheetSnapshot(snapshotFile);
+		snapshot.write("v1", null, new ArrayList<ListEntry>());
+
+		// then
+		assertThat(snapshot.read("v1")).isEmpty();
+		assertThat(snapshot.read("v2")).isNull();
+	}
+
+	@Test
+	public void shouldIgnoreMissingOrBrokenSnapshots() throws Exception {
+		// given
+		WorksheetSnapshot snapshot = new WorksheetSnapshot(snapshotFile);
+		assertThat(snapshot.read("v1")).isNull();
+
+		// when
+		try (FileOutputStream out = new FileOutputStream(snapshotFile)) {
+			out.write(new byte[] { 0x57, 0x4f, 0x4c, 0x4d, 0, 0, 0, 1, 0x7f });
+		}
+
+		// then
+		assertThat(snapshot.read("v1")).isNull();
+	}
+
+	@Test
+	public void shouldRememberWhenTheRowsWereRead() throws Exception {
+		// given
+		WorksheetSnapshot snapshot = new WorksheetSnapshot(snapshotFile);
+		snapshot.write("v1", DateTime.parseDateTime("2014-01-12T10:00:00.000Z"), new ArrayList<ListEntry>());
+
+		// when
+		WorksheetSnapshot.Contents contents = snapshot.read();
+
+		// then
+		assert contents != null;
+		assertThat(contents.getVersion()).isEqualTo("v1");
+		assertThat(contents.getSyncedAt()).isEqualTo(DateTime.parseDateTime("2014-01-12T10:00:00.000Z"));
+	}
+
+	@Test
+	public void shouldMergeChangedRowsInWorksheetOrder() {
+		// given
+		List<ListEntry> entries = new ArrayList<>();
+		entries.add(createEntry("1", "name", "one"));
+		entries.add(createEntry("2", "name", "two"));
+		entries.add(createEntry("3", "name", "three"));
+		WorksheetSnapshot.Contents contents = new WorksheetSnapshot.Contents("v1", null, entries);
+
+		List<ListEntry> changed = new ArrayList<>();
+		changed.add(createEntry("3", "name", "THREE"));
+		changed.add(createEntry("4", "name", "four"));
+
+		// when row 2 was deleted, 3 edited and 4 inserted before it
+		List<ListEntry> merged = contents.merge(changed, Arrays.asList("1", "4", "3"));
+
+		// then
+		assert merged != null;
+		assertThat(merged).hasSize(3);
+		assertThat(merged.get(0)).isSameAs(entries.get(0));
+		assertThat(merged.get(1).getCustomElements().getValue("name")).isEqualTo("four");
+		assertThat(merged.get(2).getCustomElements().getValue("name")).isEqualTo("THREE");
+
+		// a row that is neither cached nor changed cannot be merged
+		assertThat(contents.merge(changed, Arrays.asList("1", "5"))).isNull();
+	}
+
+	@Test
+	public void shouldNameSnapshotsAfterTheWorksheet() {
+		WorksheetSnapshot snapshot = WorksheetSnapshot.forWorksheet(new File("/cache"),
+				"https://spreadsheets.google.com/feeds/worksheets/key123/private/full/od6");
+
+		assertThat(snapshot.getSnapshotFile().getPath()).isEqualTo(
+				"/cache/worksheets/spreadsheets.google.com_feeds_worksheets_key123_private_full_od6.rows");
+	}
+
+	private ListEntry createEntry(String id, String... cells) {
+		ListEntry entry = new ListEntry();
+		entry.setId(id);
+		for (int i = 0; i < cells.length; i += 2)
+			RowSource.setCellValue(entry.getCustomElements(), cells[i], cells[i + 1]);
+		return entry;
+	}
+}
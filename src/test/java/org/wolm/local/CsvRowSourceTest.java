@@ -0,0 +1,70 @@
+package org.wolm.local;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wolm.google.GoogleRow;
+
+public class CsvRowSourceTest {
+	private File csvFile;
+
+	@Before
+	public void beforeEachTest() throws Exception {
+		csvFile = File.createTempFile("Media Log", ".csv");
+	}
+
+	@After
+	public void afterEachTest() {
+		csvFile.delete();
+	}
+
+	@Test
+	public void shouldParseQuotedFields() {
+		// given
+		String csv = "a,\"b,c\",\"say \"\"hi\"\"\"\r\n\"two\nlines\",,last\nend";
+		CsvParser parser = new CsvParser(ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8)), ',');
+
+		// when / then
+		assertThat(Arrays.asList(parser.readRecord())).isEqualTo(Arrays.asList("a", "b,c", "say \"hi\""));
+		assertThat(Arrays.asList(parser.readRecord())).isEqualTo(Arrays.asList("two\nlines", "", "last"));
+		assertThat(Arrays.asList(parser.readRecord())).isEqualTo(Arrays.asList("end"));
+		assertThat(parser.readRecord()).isNull();
+	}
+
+	@Test
+	public void shouldReadRowsLikeTheListFeed() throws Exception {
+		// given
+		String csv = "\ufeffDate,Name,Audio Link,Visibility,Name\r\n" //
+				+ "3/5/2017,Grâce,http://example.com/1.mp3,Public,x\r\n" //
+				+ "3/12/2017,\"Faith, Hope\",,Private\r\n" //
+				+ ",,,,\r\n" //
+				+ "3/19/2017,After the blank row,,Public,\r\n";
+		Files.write(csvFile.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+		CsvRowSource source = new CsvRowSource(csvFile);
+
+		// when
+		List<GoogleRow> rows = source.getRows();
+
+		// then
+		assertThat(source.getColumnNames()).isEqualTo(
+				Arrays.asList("date", "name", "audiolink", "visibility", "name_2"));
+		assertThat(rows).hasSize(2);
+		assertThat(rows.get(0).getValue("date")).isEqualTo("2017-03-05");
+		assertThat(rows.get(0).getValue("name")).isEqualTo("Grâce");
+		assertThat(rows.get(0).getValue("name_2")).isEqualTo("x");
+		assertThat(rows.get(1).getValue("name")).isEqualTo("Faith, Hope");
+		assertThat(rows.get(1).getValue("audiolink")).isNull();
+		assertThat(rows.get(1).hasColumn("audiolink")).isTrue();
+		assertThat(rows.get(1).getSource()).isSameAs(source);
+		assertThat(rows.get(1).getWorksheet()).isNull();
+	}
+}
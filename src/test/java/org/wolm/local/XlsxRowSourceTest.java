@@ -0,0 +1,136 @@
+package org.wolm.local;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wolm.google.GoogleRow;
+
+public class XlsxRowSourceTest {
+	private static final String RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+	private File xlsxFile;
+
+	@Before
+	public void beforeEachTest() throws Exception {
+		xlsxFile = File.createTempFile("Message Log", ".xlsx");
+		try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(xlsxFile))) {
+			addEntry(zip, "xl/workbook.xml", "<workbook "
+					+ "xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" "
+					+ "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets>"
+					+ "<sheet name=\"Other\" sheetId=\"1\" r:id=\"rId1\"/>"
+					+ "<sheet name=\"Media Log\" sheetId=\"2\" r:id=\"rId2\"/></sheets></workbook>");
+			addEntry(zip, "xl/_rels/workbook.xml.rels", "<Relationships "
+					+ "xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+					+ "<Relationship Id=\"rId1\" Target=\"worksheets/sheet1.xml\"/>"
+					+ "<Relationship Id=\"rId2\" Target=\"worksheets/sheet2.xml\"/></Relationships>");
+			addEntry(zip, "xl/sharedStrings.xml", "<sst><si><t>Date</t></si><si><t>Name</t></si>"
+					+ "<si><t>Audio Link</t></si><si><r><t>Grace </t></r><r><rPr><b/></rPr><t>Alone</t></r>"
+					+ "<rPh><t>x</t></rPh></si></sst>");
+			addEntry(zip, "xl/styles.xml", "<styleSheet><numFmts>"
+					+ "<numFmt numFmtId=\"164\" formatCode=\"yyyy\\-mm\\-dd\"/></numFmts>"
+					+ "<cellXfs><xf numFmtId=\"0\"/><xf numFmtId=\"164\"/><xf numFmtId=\"14\"/></cellXfs>"
+					+ "</styleSheet>");
+			addEntry(zip, "xl/worksheets/sheet1.xml", "<worksheet><sheetData/></worksheet>");
+			addEntry(zip, "xl/worksheets/sheet2.xml", "<worksheet><sheetData>"
+					+ "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" t=\"s\"><v>1</v></c>"
+					+ "<c r=\"C1\" t=\"s\"><v>2</v></c><c r=\"D1\" t=\"inlineStr\"><is><t>Length</t></is></c></row>"
+					+ "<row r=\"2\"><c r=\"A2\" s=\"1\"><v>42799</v></c><c r=\"B2\" t=\"s\"><v>3</v></c>"
+					+ "<c r=\"D2\"><v>45.0</v></c></row>"
+					+ "<row r=\"3\"><c r=\"A3\" s=\"2\"><v>42806.75</v></c><c r=\"C3\" t=\"str\"><f>A1</f>"
+					+ "<v>http://example.com/2.mp3</v></c></row>"
+					+ "<row r=\"5\"><c r=\"A5\" s=\"2\"><v>42813</v></c></row>" //
+					+ "</sheetData></worksheet>");
+		}
+	}
+
+	@After
+	public void afterEachTest() {
+		xlsxFile.delete();
+	}
+
+	@Test
+	public void shouldReadRowsLikeTheListFeed() throws Exception {
+		// given
+		XlsxRowSource source = new XlsxRowSource(xlsxFile, "Media Log");
+
+		// when
+		List<GoogleRow> rows = source.getRows();
+
+		// then
+		assertThat(source.getColumnNames()).isEqualTo(Arrays.asList("date", "name", "audiolink", "length"));
+		assertThat(rows).hasSize(2);
+		assertThat(rows.get(0).getValue("date")).isEqualTo("2017-03-05");
+		assertThat(rows.get(0).getValue("name")).isEqualTo("Grace Alone");
+		assertThat(rows.get(0).getValue("audiolink")).isNull();
+		assertThat(rows.get(0).getValue("length")).isEqualTo("45");
+		assertThat(rows.get(1).getValue("date")).isEqualTo("2017-03-12");
+		assertThat(rows.get(1).getValue("audiolink")).isEqualTo("http://example.com/2.mp3");
+	}
+
+	@Test
+	public void shouldConvertExcelDates() {
+		assertThat(XlsxRowSource.toDate(1, false)).isEqualTo("1/1/1900");
+		assertThat(XlsxRowSource.toDate(59, false)).isEqualTo("2/28/1900");
+		assertThat(XlsxRowSource.toDate(61, false)).isEqualTo("3/1/1900");
+		assertThat(XlsxRowSource.toDate(42799.5, false)).isEqualTo("3/5/2017");
+		assertThat(XlsxRowSource.toDate(0, true)).isEqualTo("1/1/1904");
+		assertThat(XlsxRowSource.isDateFormat("yyyy\\-mm\\-dd")).isTrue();
+		assertThat(XlsxRowSource.isDateFormat("\"day\" 0.00")).isFalse();
+		assertThat(XlsxRowSource.toColumnIndex("AB12")).isEqualTo(27);
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldFailForMissingWorksheet() throws Exception {
+		new XlsxRowSource(xlsxFile, "Missing").getRows();
+	}
+
+	@Test
+	public void shouldNotResolveExternalEntities() throws Exception {
+		// given
+		File secretFile = File.createTempFile("secret", ".txt");
+		Files.write(secretFile.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+		try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(xlsxFile))) {
+			addEntry(zip, "xl/workbook.xml", "<workbook xmlns:r=\"" + RELATIONSHIPS + "\"><sheets>"
+					+ "<sheet name=\"Media Log\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+			addEntry(zip, "xl/_rels/workbook.xml.rels", "<Relationships>"
+					+ "<Relationship Id=\"rId1\" Target=\"worksheets/sheet1.xml\"/></Relationships>");
+			addEntry(zip, "xl/sharedStrings.xml", "<!DOCTYPE sst [<!ENTITY secret SYSTEM \"" + secretFile.toURI()
+					+ "\">]><sst><si><t>Name</t></si><si><t>&secret;</t></si></sst>");
+			addEntry(zip, "xl/worksheets/sheet1.xml", "<worksheet><sheetData>"
+					+ "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c></row>"
+					+ "<row r=\"2\"><c r=\"A2\" t=\"s\"><v>1</v></c></row></sheetData></worksheet>");
+		}
+
+		try {
+			// when
+			List<GoogleRow> rows = new XlsxRowSource(xlsxFile, "Media Log").getRows();
+
+			// then
+			assertThat(rows.get(0).getValue("name")).isNotEqualTo("secret");
+		}
+		catch (IOException e) {
+			// refusing the entity is fine too
+		}
+		finally {
+			secretFile.delete();
+		}
+	}
+
+	private void addEntry(ZipOutputStream zip, String name, String xml) throws Exception {
+		zip.putNextEntry(new ZipEntry(name));
+		zip.write(xml.getBytes(StandardCharsets.UTF_8));
+		zip.closeEntry();
+	}
+}
@@ -0,0 +1,85 @@
+package org.wolm.podcast;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wolm.aws.AwsS3Helper;
+import org.wolm.google.GoogleHelper;
+
+public class AppDaemonTest {
+	private File messageLogFile;
+	private File podcastFile;
+
+	@Before
+	public void beforeEachTest() throws Exception {
+		messageLogFile = File.createTempFile("Media Log", ".csv");
+		String messageLog = "Date,Name,Description,Audio Link,Visibility,Playlist\r\n"
+				+ "3/5/2017,Faith,,http://example.com/1.mp3,Private,Service\r\n";
+		Files.write(messageLogFile.toPath(), messageLog.getBytes(StandardCharsets.UTF_8));
+		podcastFile = File.createTempFile("podcast", ".rss.xml");
+		podcastFile.delete();
+	}
+
+	@After
+	public void afterEachTest() {
+		messageLogFile.delete();
+		podcastFile.delete();
+	}
+
+	@Test
+	public void shouldPublishAgainOnlyWhenMessageLogChanges() throws Exception {
+		// given
+		final App app = new App(new GoogleHelper("org-wolm-podcast-test"), new AwsS3Helper(new File("missing")));
+		app.setSourceFilePath(messageLogFile.getPath());
+		app.setOutFilePath(podcastFile.getPath());
+		app.setEnclosureCacheDisabled(true);
+		app.setS3ListingDisabled(true);
+		app.setPollSeconds(1);
+		final FeedDefinition feed = app.getDefaultFeed();
+		Thread daemon = new Thread() {
+			@Override
+			public void run() {
+				try {
+					app.daemon(Collections.singletonList(feed), podcastFile, false);
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+
+		// when
+		daemon.start();
+		try {
+			// then
+			assertThat(waitFor(podcastFile, 10000)).isTrue();
+			podcastFile.delete();
+			assertThat(waitFor(podcastFile, 2500)).isFalse();
+
+			// when
+			messageLogFile.setLastModified(messageLogFile.lastModified() - 60 * 1000);
+
+			// then
+			assertThat(waitFor(podcastFile, 10000)).isTrue();
+		}
+		finally {
+			app.stopDaemon();
+			daemon.join(10000);
+		}
+		assertThat(daemon.isAlive()).isFalse();
+	}
+
+	private boolean waitFor(File file, long timeoutMillis) throws InterruptedException {
+		long endTime = System.currentTimeMillis() + timeoutMillis;
+		while (!file.exists() && System.currentTimeMillis() < endTime)
+			Thread.sleep(50);
+		return file.exists();
+	}
+}
@@ -0,0 +1,74 @@
+package org.wolm.podcast;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EnclosureCacheTest {
+	private File cacheFile;
+
+	@Before
+	public void beforeEachTest() throws Exception {
+		cacheFile = File.createTempFile("enclosures", ".properties");
+		cacheFile.delete();
+	}
+
+	@After
+	public void afterEachTest() {
+		cacheFile.delete();
+	}
+
+	@Test
+	public void shouldSurviveSaveAndLoad() throws Exception {
+		// given
+		EnclosureCache cache = new EnclosureCache(cacheFile);
+		cache.put(new Enclosure("http://a/1.mp3", 1234L, "\"abc\"", 1400000000000L, null, 1500000000000L, 10));
+		cache.put(new Enclosure("http://a/2.mp3", null, null, null, "HTTP 404", 1500000000000L, 10));
+		cache.save();
+
+		// when
+		EnclosureCache loaded = new EnclosureCache(cacheFile).load();
+
+		// then
+		assertThat(loaded.size()).isEqualTo(2);
+		Enclosure found = loaded.get("http://a/1.mp3");
+		assert found != null;
+		assertThat(found.getLength()).isEqualTo(1234L);
+		assertThat(found.getEtag()).isEqualTo("\"abc\"");
+		assertThat(found.getLastModified()).isEqualTo(1400000000000L);
+		assertThat(found.getCheckedAt()).isEqualTo(1500000000000L);
+		assertThat(found.isFailed()).isFalse();
+
+		Enclosure failed = loaded.get("http://a/2.mp3");
+		assert failed != null;
+		assertThat(failed.getLength()).isNull();
+		assertThat(failed.getFailure()).isEqualTo("HTTP 404");
+	}
+
+	@Test
+	public void shouldAnswerFreshEntriesWithoutRequests() throws Exception {
+		// given
+		long now = System.currentTimeMillis();
+		EnclosureCache cache = new EnclosureCache(cacheFile);
+		cache.put(new Enclosure("http://a/1.mp3", 1234L, "\"abc\"", null, null, now, 10));
+		cache.put(new Enclosure("http://a/2.mp3", null, null, null, "HTTP 404", now, 10));
+		EnclosureResolver_Cached resolver = new EnclosureResolver_Cached(cache, new EnclosureResolver_Http(1, 1),
+				60000, 60000);
+
+		// when
+		Map<String, Enclosure> enclosures = resolver.resolve(Arrays.asList("http://a/2.mp3", "http://a/1.mp3"));
+
+		// then
+		assertThat(resolver.getLastCachedCount()).isEqualTo(2);
+		assertThat(resolver.getLastRequestedCount()).isEqualTo(0);
+		assertThat(new ArrayList<>(enclosures.keySet())).isEqualTo(Arrays.asList("http://a/2.mp3", "http://a/1.mp3"));
+		assertThat(enclosures.get("http://a/1.mp3").getLength()).isEqualTo(1234L);
+	}
+}
@@ -0,0 +1,70 @@
+package org.wolm.podcast;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.Calendar;
+
+import org.junit.Test;
+import org.wolm.google.GoogleRow;
+import org.wolm.google.RowFilter;
+
+import com.google.gdata.data.spreadsheet.ListEntry;
+
+public class FeedDefinitionTest {
+
+	@Test
+	public void shouldParseFeedParameter() {
+		// when
+		FeedDefinition feed = FeedDefinition
+				.parse("key=wolmn-wednesday-podcast.rss.xml, day=wednesday, length=12, title=\"Midweek: Bible Study\"");
+
+		// then
+		assertThat(feed.getKey()).isEqualTo("wolmn-wednesday-podcast.rss.xml");
+		assertThat(feed.getWeekday()).isEqualTo(Calendar.WEDNESDAY);
+		assertThat(feed.getPlaylist()).isEqualTo("Service");
+		assertThat(feed.getLength()).isEqualTo(12);
+		assertThat(feed.getTitle()).isEqualTo("Midweek: Bible Study");
+		assertThat(feed.getDescription()).isEqualTo("Podcast of Word of Life Ministries Wednesday messages");
+	}
+
+	@Test
+	public void shouldKeepCommasInQuotedValues() {
+		// when
+		FeedDefinition feed = FeedDefinition.parse("key=a.xml,title=\"Faith, Hope and Love\",description=\"Sermons\"");
+
+		// then
+		assertThat(feed.getTitle()).isEqualTo("Faith, Hope and Love");
+		assertThat(feed.getDescription()).isEqualTo("Sermons");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectUnclosedQuote() {
+		FeedDefinition.parse("key=a.xml,title=\"Faith, Hope");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRequireKey() {
+		FeedDefinition.parse("day=Sunday,length=6");
+	}
+
+	@Test
+	public void shouldKeepRowsOfItsPlaylistAndDay() {
+		// given
+		RowFilter filter = FeedDefinition.parse("key=a.xml,playlist=Service,day=Sunday,length=2").createRowFilter();
+		RowFilter anyPlaylist = FeedDefinition.parse("key=b.xml,playlist=*").createRowFilter();
+
+		// then
+		assertThat(filter.keepRow(createRow("Service", "2014-01-08"))).isFalse(); // Wednesday
+		assertThat(filter.keepRow(createRow("Bible Study", "2014-01-05"))).isFalse();
+		assertThat(filter.keepRow(createRow("Service", "2014-01-05"))).isTrue();
+		assertThat(filter.keepRow(createRow("Service", "2013-12-29"))).isTrue();
+		assertThat(anyPlaylist.keepRow(createRow("Bible Study", "2014-01-08"))).isTrue();
+	}
+
+	private GoogleRow createRow(String playlist, String date) {
+		ListEntry entry = new ListEntry();
+		entry.getCustomElements().setValueLocal("playlist", playlist);
+		entry.getCustomElements().setValueLocal("date", date);
+		return new GoogleRow(null, entry);
+	}
+}
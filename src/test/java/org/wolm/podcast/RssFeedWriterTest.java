@@ -0,0 +1,126 @@
+package org.wolm.podcast;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.junit.Test;
+
+public class RssFeedWriterTest {
+	static final FeedDefinition SUNDAY_FEED = new FeedDefinition("wolmn-service-podcast.rss.xml",
+			"Word of Life Ministries: Sunday", "Podcast of Word of Life Ministries Sunday services", "Service", null, 6);
+
+	@Test
+	public void shouldWriteTheSameBytesAsPrintln() throws Exception {
+		// given
+		List<PodcastItem> items = createItems(52);
+		items.add(new PodcastItem("Faith & \"Works\" <Part 2>", "It's été\u0085 😀 \u0080\u0001\ud800",
+				"http://www.wordoflifemn.org/a&b.mp3", new Date(1404050400000L), 0));
+
+		// then
+		assertThat(render(items, 8 * 1024)).isEqualTo(renderWithPrintln(items));
+	}
+
+	@Test
+	public void shouldWriteTheSameBytesWhenTheBufferIsSmall() throws Exception {
+		// given
+		List<PodcastItem> items = createItems(10);
+
+		// then
+		assertThat(render(items, 64)).isEqualTo(renderWithPrintln(items));
+	}
+
+	@Test
+	public void shouldEscapeEveryCharacterLikeStringEscapeUtils() throws Exception {
+		// given
+		List<PodcastItem> items = new ArrayList<>();
+		for (int block = 0; block < 0x10000; block += 0x400) {
+			StringBuilder text = new StringBuilder();
+			for (int c = block; c < block + 0x400; c++)
+				text.append((char) c).append('x');
+			items.add(new PodcastItem(text.toString(), "😀\ude00\ud83d", "http://a/b.mp3", new Date(0), 1));
+		}
+
+		// then
+		assertThat(render(items, 8 * 1024)).isEqualTo(renderWithPrintln(items));
+	}
+
+	static List<PodcastItem> createItems(int count) {
+		List<PodcastItem> items = new ArrayList<>(count);
+		long sunday = 1388941200000L; // 2014-01-05 10:00 in Minnesota
+		for (int i = 0; i < count; i++) {
+			Date date = new Date(sunday + i * 7L * 24 * 60 * 60 * 1000);
+			items.add(new PodcastItem("Message " + i + ": Walking in Love", "Pastor's message on 1 John 4 & how we <love> "
+					+ i, "https://s3-us-west-2.amazonaws.com/wordoflife.mn.audio/2014/service-" + i + ".mp3", date,
+					30000000L + i * 1024));
+		}
+		return items;
+	}
+
+	static byte[] render(List<PodcastItem> items, int bufferSize) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		RssFeedWriter writer = new RssFeedWriter(new OutputStreamWriter(bytes, "UTF-8"), SUNDAY_FEED, bufferSize);
+		writer.writeHeader();
+		for (PodcastItem item : items)
+			writer.writeItem(item);
+		writer.writeFooter();
+		writer.flush();
+		return bytes.toByteArray();
+	}
+
+	/** The way the podcast used to be written, line by line */
+	static byte[] renderWithPrintln(List<PodcastItem> items) throws Exception {
+		SimpleDateFormat rssFormatter = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream outStream = new PrintStream(bytes, false, "UTF-8");
+
+		outStream.println("<?xml version=\"1.0\"?>");
+		outStream.println("<rss version=\"2.0\" xmlns:atom=\"http://www.w3.org/2005/Atom\">");
+		outStream.println("  <channel>");
+		outStream.println("    <title>Word of Life Ministries: Sunday</title>");
+		outStream.println("    <link>http://www.wordoflifemn.org/</link>");
+		outStream.println("    <description>Podcast of Word of Life Ministries Sunday services</description>");
+		outStream.println("    <language>en-us</language>");
+		outStream.println("    <copyright>Copyright 2014 Word of Life Ministries</copyright>");
+		outStream.println("    <managingEditor>wordoflife.mn@gmail.com (Word of Life Ministries)</managingEditor>");
+		outStream.println("    <webMaster>kevmurray@me.com (Kevin Murray)</webMaster>");
+		outStream.println("    <category>Christian Sermon</category>");
+		outStream.println("    <ttl>60</ttl>");
+		outStream.println("    <image>");
+		outStream.println(
+				"      <url>https://s3-us-west-2.amazonaws.com/wordoflife.mn.podcast/WordofLifeMinD72aR05aP01ZL.png</url>");
+		outStream.println("      <title>Word of Life Ministries</title>");
+		outStream.println("      <link>http://www.wordoflifemn.org/</link>");
+		outStream.println("    </image>");
+		outStream.println(
+				"    <atom:link href=\"http://s3-us-west-2.amazonaws.com/wordoflife.mn.podcast/wolmn-service-podcast.rss.xml\" "
+						+ "rel=\"self\" type=\"application/rss+xml\" />");
+
+		for (PodcastItem item : items) {
+			outStream.println("    <item>");
+			outStream.println("      <title>" + StringEscapeUtils.escapeXml10(item.getTitle()) + "</title>");
+			outStream.println("      <description>" + StringEscapeUtils.escapeXml10(item.getDescription())
+					+ "</description>");
+			outStream.println("      <author>wordoflife.mn@gmail.com (Word of Life Ministries)</author>");
+			outStream.println("      <category>Christian Sermon</category>");
+			outStream.println("      <guid>" + item.getAudioUrl() + "</guid>");
+			outStream.println("      <pubDate>" + rssFormatter.format(item.getPublishDate()) + "</pubDate>");
+			outStream.println("      <enclosure url=\"" + item.getAudioUrl() + "\" length=\"" + item.getAudioLength()
+					+ "\" type=\"audio/mpeg\" />");
+			outStream.println("    </item>");
+		}
+
+		outStream.println("  </channel>");
+		outStream.println("</rss>");
+		outStream.flush();
+		return bytes.toByteArray();
+	}
+}